@@ -0,0 +1,18 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.Arrays;
+
+/**
+ * 基准测试用的消息构造
+ */
+final class BenchmarkMessages {
+
+    private BenchmarkMessages() {
+    }
+
+    static BusinessMessage message(long messageId, int payloadSize, int messageType) {
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        return new BusinessMessage(messageId, new String(chars), System.currentTimeMillis(), messageType);
+    }
+}
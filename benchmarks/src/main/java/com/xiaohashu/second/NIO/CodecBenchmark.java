@@ -0,0 +1,90 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协议编解码：编码到目标缓冲区/池化缓冲区；解码时把连续的帧流按固定块大小切开喂给解码器，
+ * 块大小与帧长互质，切口会落在协议头中间、消息体中间等各种位置，模拟真实的半包和粘包
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final int FRAMES = 64;
+
+    @Param({"16", "256", "4096"})
+    int payloadSize;
+
+    // 每次read到的字节数：7和13切在协议头内，1500约为一个以太网MTU，65536为整块读入
+    @Param({"7", "13", "1500", "65536"})
+    int chunkSize;
+
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+    private final KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+    private BusinessMessage message;
+    private ByteBuffer target;
+    private ByteBuffer stream;
+    private ByteBuffer chunk;
+    private ByteBuffer receiveBuffer;
+
+    @Setup
+    public void setup() {
+        message = BenchmarkMessages.message(1, payloadSize, 2);
+        target = ByteBuffer.allocateDirect(payloadSize * 4 + 256);
+
+        // 预先编码FRAMES个连续的帧
+        stream = ByteBuffer.allocateDirect((payloadSize * 4 + 256) * FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            encoder.encode(BenchmarkMessages.message(i, payloadSize, 2), stream);
+        }
+        stream.flip();
+        chunk = stream.duplicate(); // 复用同一个视图切块，避免测量中分配
+        receiveBuffer = ByteBuffer.allocateDirect(Math.max(stream.limit(), chunkSize) + chunkSize);
+    }
+
+    @Benchmark
+    public boolean encodeToBuffer() {
+        target.clear();
+        return encoder.encode(message, target);
+    }
+
+    @Benchmark
+    public int encodeToPooled() {
+        PooledByteBuffer frame = encoder.encode(message);
+        int length = frame.buffer().remaining();
+        frame.release();
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeSplit(Blackhole blackhole) {
+        receiveBuffer.clear();
+        int end = stream.limit();
+        for (int position = 0; position < end; position += chunkSize) {
+            // 模拟一次read：把下一块数据追加到接收缓冲区（写模式），再交给解码器
+            chunk.limit(Math.min(position + chunkSize, end));
+            chunk.position(position);
+            receiveBuffer.put(chunk);
+            blackhole.consume(decoder.decode(receiveBuffer));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧压缩：对比 编码/编码+压缩、解码/解压+解码 的耗时，setup时打印帧压缩前后的字节数，
+ * 两者结合看每节省1KB带宽要花多少CPU。
+ * <ul>
+ *     <li>text：重复度高的业务文本（日志、JSON一类），压缩收益大</li>
+ *     <li>random：随机字符，几乎不可压缩，衡量压缩失败（原样发送）的额外开销</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"1024", "16384", "262144"})
+    int payloadSize;
+
+    @Param({"text", "random"})
+    String content;
+
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+    private final KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+    private final FrameCompressor compressor = new FrameCompressor(1, null);
+    private BusinessMessage message;
+    private ByteBuffer plainFrame;
+    private ByteBuffer compressedFrame;
+    private ByteBuffer receiveBuffer;
+
+    @Setup
+    public void setup() {
+        message = new BusinessMessage(1L, payload(), System.currentTimeMillis(), 2);
+        plainFrame = copy(encoder.encode(message));
+        compressedFrame = copy(compressor.compress(encoder.encode(message)));
+        receiveBuffer = ByteBuffer.allocateDirect(plainFrame.capacity() + compressedFrame.capacity());
+        System.out.printf("%n# payload=%d content=%s 帧: %d -> %d 字节 (节省%.1f%%)%n", payloadSize, content,
+                plainFrame.remaining(), compressedFrame.remaining(),
+                100.0 * (plainFrame.remaining() - compressedFrame.remaining()) / plainFrame.remaining());
+    }
+
+    @Benchmark
+    public int encode() {
+        PooledByteBuffer frame = encoder.encode(message);
+        int length = frame.buffer().remaining();
+        frame.release();
+        return length;
+    }
+
+    @Benchmark
+    public int encodeCompressed() {
+        PooledByteBuffer frame = compressor.compress(encoder.encode(message));
+        int length = frame.buffer().remaining();
+        frame.release();
+        return length;
+    }
+
+    @Benchmark
+    public List<BusinessMessage> decode() {
+        return decodeFrame(plainFrame);
+    }
+
+    @Benchmark
+    public List<BusinessMessage> decodeCompressed() {
+        return decodeFrame(compressedFrame);
+    }
+
+    private List<BusinessMessage> decodeFrame(ByteBuffer frame) {
+        receiveBuffer.clear();
+        receiveBuffer.put(frame.duplicate());
+        return decoder.decode(receiveBuffer);
+    }
+
+    private String payload() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(payloadSize);
+        if ("text".equals(content)) {
+            String[] words = {"order", "status", "PAID", "userId", "amount", "\"items\":", "{", "}", ",", "skuId"};
+            while (builder.length() < payloadSize) {
+                builder.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+            }
+        } else {
+            while (builder.length() < payloadSize) {
+                builder.append((char) ('!' + random.nextInt(94)));
+            }
+        }
+        builder.setLength(payloadSize);
+        return builder.toString();
+    }
+
+    private static ByteBuffer copy(PooledByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(frame.buffer().remaining());
+        copy.put(frame.buffer()).flip();
+        frame.release();
+        return copy;
+    }
+}
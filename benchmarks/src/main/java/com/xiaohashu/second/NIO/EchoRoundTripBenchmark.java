@@ -0,0 +1,85 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端回环：内置 NioSocketServer（回显处理器）+ NioClient，一次操作 = 连续发出batchSize个请求并等全部响应。
+ * 结果除以batchSize即单条消息的平均往返时间。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoRoundTripBenchmark {
+    private static final int PORT = Integer.getInteger("bench.port", 19000);
+
+    @Param({"64", "1024", "16384"})
+    int payloadSize;
+
+    @Param({"1", "16", "128"})
+    int batchSize;
+
+    private NioSocketServer server;
+    private NioClient client;
+    private BusinessMessage[] messages;
+    private CompletableFuture<?>[] futures;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NioServerConfig config = new NioServerConfig();
+        config.setPort(PORT);
+        config.setBusinessHandler(new EchoBusinessHandler());
+        server = new NioSocketServer(config);
+        Thread boss = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("服务端启动失败: " + e.getMessage());
+            }
+        }, "bench-server");
+        boss.setDaemon(true);
+        boss.start();
+        Thread.sleep(500);
+
+        client = new NioClient("Bench");
+        client.connect("127.0.0.1", PORT);
+        messages = new BusinessMessage[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            messages[i] = BenchmarkMessages.message(0, payloadSize, 2);
+        }
+        futures = new CompletableFuture<?>[batchSize];
+    }
+
+    @Benchmark
+    public Object roundTrip() throws Exception {
+        for (int i = 0; i < batchSize; i++) {
+            BusinessMessage message = messages[i];
+            message.setMessageId(client.nextMessageId());
+            futures[i] = client.request(message);
+        }
+        return CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+}
@@ -0,0 +1,67 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KryoSerializer：池化byte[]路径与线程本地ByteBuffer零拷贝路径的序列化/反序列化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+    @Param({"16", "256", "4096"})
+    int payloadSize;
+
+    private final KryoSerializer serializer = KryoSerializer.getInstance();
+    private BusinessMessage message;
+    private byte[] bytes;
+    private ByteBuffer target;
+    private ByteBuffer source;
+
+    @Setup
+    public void setup() {
+        message = BenchmarkMessages.message(1, payloadSize, 2);
+        bytes = serializer.serialize(message);
+        target = ByteBuffer.allocateDirect(payloadSize * 4 + 256);
+        source = ByteBuffer.allocateDirect(bytes.length);
+        source.put(bytes).flip();
+    }
+
+    @Benchmark
+    public byte[] serializeToBytes() {
+        return serializer.serialize(message);
+    }
+
+    @Benchmark
+    public int serializeToBuffer() {
+        target.clear();
+        return serializer.serialize(message, target);
+    }
+
+    @Benchmark
+    public BusinessMessage deserializeFromBytes() {
+        return serializer.deserialize(bytes, BusinessMessage.class);
+    }
+
+    @Benchmark
+    public BusinessMessage deserializeFromBuffer() {
+        source.position(0);
+        return serializer.deserialize(source, BusinessMessage.class);
+    }
+}
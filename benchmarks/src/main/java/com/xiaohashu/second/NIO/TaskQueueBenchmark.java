@@ -0,0 +1,61 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件循环任务队列：3个生产者线程提交、1个消费者线程取出，对比 MpscQueue 与 ConcurrentLinkedQueue 的吞吐。
+ * 消费者取空时返回null，计入吞吐但不阻塞，测的是队列本身的入队/出队开销
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskQueueBenchmark {
+    private static final Runnable TASK = () -> { };
+
+    private final MpscQueue<Runnable> mpsc = new MpscQueue<>();
+    private final ConcurrentLinkedQueue<Runnable> clq = new ConcurrentLinkedQueue<>();
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(3)
+    public void mpscOffer() {
+        mpsc.offer(TASK);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public Runnable mpscPoll() {
+        return mpsc.poll();
+    }
+
+    @Benchmark
+    @Group("clq")
+    @GroupThreads(3)
+    public void clqOffer() {
+        clq.offer(TASK);
+    }
+
+    @Benchmark
+    @Group("clq")
+    @GroupThreads(1)
+    public Runnable clqPoll() {
+        return clq.poll();
+    }
+}
@@ -0,0 +1,93 @@
+package com.xiaohashu.second.NIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 等待策略的延迟/CPU取舍：单个请求的往返延迟分布（SampleTime给出p50/p99/p99.9），
+ * 每轮迭代结束打印进程CPU占用（核数）。忙轮询需要独占一个核，核数少于 worker+客户端线程 时结果会被调度干扰。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitStrategyBenchmark {
+    private static final int PORT = Integer.getInteger("bench.port", 19000) + 1;
+
+    @Param({"BLOCKING", "BUSY_SPIN", "ADAPTIVE"})
+    String waitStrategy;
+
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private NioSocketServer server;
+    private NioClient client;
+    private BusinessMessage message;
+    private long iterationStartNanos;
+    private long iterationStartCpuNanos;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NioServerConfig config = new NioServerConfig();
+        config.setPort(PORT);
+        config.setWorkerThreads(1);
+        config.setWaitStrategy(waitStrategy);
+        config.setJmxEnabled(false);
+        config.setBusinessExecutorType(BusinessExecutorType.INLINE);
+        config.setBusinessHandler(new EchoBusinessHandler());
+        server = new NioSocketServer(config);
+        Thread boss = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("服务端启动失败: " + e.getMessage());
+            }
+        }, "bench-server");
+        boss.setDaemon(true);
+        boss.start();
+        Thread.sleep(500);
+
+        client = new NioClient("Bench");
+        client.connect("127.0.0.1", PORT);
+        message = BenchmarkMessages.message(0, 64, 2);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationStartNanos = System.nanoTime();
+        iterationStartCpuNanos = os.getProcessCpuTime();
+    }
+
+    @Benchmark
+    public Object roundTrip() throws Exception {
+        message.setMessageId(client.nextMessageId());
+        return client.request(message).get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportCpu() {
+        double cores = (double) (os.getProcessCpuTime() - iterationStartCpuNanos) / (System.nanoTime() - iterationStartNanos);
+        System.out.printf(" [%s CPU %.2f核]", waitStrategy, cores);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+}
@@ -0,0 +1,324 @@
+package com.xiaohashu.second.NIO;
+
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事件循环的准入控制与过载保护（只在所属事件循环线程访问），作用于解码后、进入业务执行阶段之前的消息。
+ * <ul>
+ *     <li>连接级限流：每个连接一个令牌桶，取不到令牌的消息回繁忙帧，并暂停读取该连接直到下一个令牌可用，
+ *     由TCP窗口把压力推回发送方</li>
+ *     <li>类型级限流：每种限流的消息类型一个令牌桶（服务端速率按worker数均分到各循环），取不到令牌回繁忙帧</li>
+ *     <li>过载检测：每个周期取本循环的最大延迟和业务阶段队列深度，任一达到阈值即为过载。持续过载时逐级处理：
+ *     暂停读取负载最重的连接 → 对高负载连接回繁忙帧 → 断开被暂停的连接；恢复后每个周期放开一批</li>
+ * </ul>
+ * 负载达到平均负载一半以上的连接才会被暂停或拒绝；平均负载在过载期间取峰值，最重的连接被暂停后，
+ * 剩下的低速率正常客户端不会因为平均值下降而被误判，过载期间照常处理。心跳由解码器直接应答，不经过这里。
+ * 分块流的开始分块按其消息判断，数据分块按帧计入连接级限流和负载，被拒绝时回繁忙帧（消息ID即流ID）。
+ */
+public class AdmissionController {
+    static final int NORMAL = 0;
+    static final int PAUSE = 1;      // 暂停读取最重的连接
+    static final int REJECT = 2;     // 另对高负载连接回繁忙帧
+    static final int DISCONNECT = 3; // 另断开被暂停的连接
+
+    private final NioEventLoop eventLoop;
+    private final EventHandler eventHandler;
+    private final HashedTimingWheel timingWheel;
+    private final List<ClientConnection> connections; // 本循环的连接，由EventHandler维护
+    private final StageMetrics businessMetrics;
+    private final EventLoopMetrics metrics;
+    private final int connectionRate;
+    private final int connectionBurst;
+    private final int[] limitedTypes;
+    private final TokenBucket[] typeBuckets;
+    private final boolean overloadDetection;
+    private final boolean enabled;
+
+    private final long checkMillis;
+    private final long lagThresholdNanos;
+    private final int queueDepthThreshold;
+    private final long rejectAfterMillis;
+    private final long disconnectAfterMillis;
+    private final ClientConnection[] heaviest;                     // 挑选最重连接的暂存数组
+    private final List<ClientConnection> shedList = new ArrayList<>(); // 被过载保护暂停的连接，按暂停先后
+    private int level = NORMAL;
+    private long overloadSince;
+    private long window;          // 当前检测周期序号
+    private int windowMessages;   // 本周期准入判断过的消息数
+    private int activeConnections; // 本周期有消息的连接数
+    private int fairShareLoad;    // 平均负载（与连接load同一口径），过载期间取峰值
+
+    AdmissionController(NioEventLoop eventLoop, EventHandler eventHandler, HashedTimingWheel timingWheel,
+                        List<ClientConnection> connections, NioServerConfig config, StageMetrics businessMetrics) {
+        this.eventLoop = eventLoop;
+        this.eventHandler = eventHandler;
+        this.timingWheel = timingWheel;
+        this.connections = connections;
+        this.businessMetrics = businessMetrics;
+        this.metrics = eventLoop.getMetrics();
+        this.connectionRate = config.getConnectionRateLimit();
+        this.connectionBurst = config.getConnectionBurst() > 0 ? config.getConnectionBurst() : connectionRate;
+
+        List<String> entries = new ArrayList<>();
+        for (String entry : config.getTypeRateLimits().split(",")) {
+            if (!entry.trim().isEmpty()) {
+                entries.add(entry.trim());
+            }
+        }
+        this.limitedTypes = new int[entries.size()];
+        this.typeBuckets = new TokenBucket[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            String[] parts = entries.get(i).split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("消息类型限流格式应为 类型:每秒条数: " + entries.get(i));
+            }
+            limitedTypes[i] = Integer.parseInt(parts[0].trim());
+            double loopRate = Double.parseDouble(parts[1].trim()) / config.getWorkerThreads();
+            typeBuckets[i] = new TokenBucket(loopRate, loopRate / 10, eventLoop.currentTimeMillis());
+        }
+
+        this.checkMillis = config.getOverloadCheckMillis();
+        this.lagThresholdNanos = config.getOverloadLagMillis() * 1000000L;
+        this.queueDepthThreshold = config.getOverloadQueueDepth();
+        this.rejectAfterMillis = config.getOverloadRejectAfterMillis();
+        this.disconnectAfterMillis = config.getOverloadDisconnectAfterMillis();
+        this.heaviest = new ClientConnection[Math.max(1, config.getOverloadShedConnections())];
+        this.overloadDetection = checkMillis > 0 && (lagThresholdNanos > 0 || queueDepthThreshold > 0);
+        this.enabled = connectionRate > 0 || limitedTypes.length > 0 || overloadDetection;
+        if (overloadDetection) {
+            timingWheel.schedule(new OverloadCheck(), eventLoop.currentTimeMillis() + checkMillis);
+        }
+    }
+
+    /**
+     * 准入判断：通过返回true；不通过时已回复繁忙帧，消息丢弃
+     */
+    boolean admit(ClientConnection connection, BusinessMessage message) {
+        return admit(connection, message.getMessageId(), message.getMessageType(), true);
+    }
+
+    /**
+     * 流数据分块的准入判断：不做类型级限流（开始分块已判断过），不通过时已按流ID回复繁忙帧，调用方中止该流
+     */
+    boolean admitStreamData(ClientConnection connection, StreamChunk chunk) {
+        return admit(connection, chunk.getStreamId(), chunk.getMessageType(), false);
+    }
+
+    private boolean admit(ClientConnection connection, long messageId, int messageType, boolean typeLimited) {
+        if (!enabled) {
+            return true;
+        }
+        long now = eventLoop.currentTimeMillis();
+        int load = overloadDetection ? recordLoad(connection) : 0;
+        if (connectionRate > 0 && !acquireConnectionToken(connection, now)) {
+            metrics.onRateLimited();
+            reject(connection, messageId);
+            return false;
+        }
+        for (int i = 0; typeLimited && i < limitedTypes.length; i++) {
+            if (limitedTypes[i] == messageType) {
+                if (!typeBuckets[i].tryAcquire(now)) {
+                    metrics.onRateLimited();
+                    reject(connection, messageId);
+                    return false;
+                }
+                break;
+            }
+        }
+        if (level >= REJECT && isHeavy(load)) {
+            metrics.onOverloadRejected();
+            reject(connection, messageId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 连接关闭时清理限流和过载保护状态
+     */
+    void onClose(ClientConnection connection) {
+        if (connection.getThrottleTimeout() != null) {
+            timingWheel.cancel(connection.getThrottleTimeout());
+        }
+        if (connection.isShed()) {
+            shedList.remove(connection);
+        }
+    }
+
+    private boolean acquireConnectionToken(ClientConnection connection, long now) {
+        TokenBucket bucket = connection.getRateLimiter();
+        if (bucket == null) {
+            bucket = new TokenBucket(connectionRate, connectionBurst, now);
+            connection.setRateLimiter(bucket);
+        }
+        if (bucket.tryAcquire(now)) {
+            return true;
+        }
+        // 暂停读取，已读入的消息照常判断；下一个令牌可用时恢复
+        HashedTimingWheel.Timeout timeout = connection.getThrottleTimeout();
+        if (timeout == null) {
+            timeout = new ThrottleTimeout(connection);
+            connection.setThrottleTimeout(timeout);
+        }
+        if (!timeout.isScheduled()) {
+            connection.setThrottled(true);
+            eventHandler.updateReadInterest(connection);
+            timingWheel.schedule(timeout, now + bucket.millisUntilAvailable(now));
+        }
+        return false;
+    }
+
+    /**
+     * 回复繁忙帧：预编码模板，不经过出站处理器
+     */
+    private void reject(ClientConnection connection, long messageId) {
+        PooledByteBuffer frame = PooledBufferAllocator.getInstance().allocate(HeartbeatCodec.busyFrameLength());
+        HeartbeatCodec.encodeBusy(frame.buffer(), messageId, eventLoop.currentTimeMillis());
+        frame.buffer().flip();
+        eventHandler.enqueue(connection, frame);
+        eventHandler.flush(connection);
+    }
+
+    /**
+     * 累加连接的近期负载：跨过的检测周期按每个周期减半折算，不需要每个周期遍历所有连接
+     */
+    private int recordLoad(ClientConnection connection) {
+        int load = decayedLoad(connection);
+        if (connection.getLoadWindow() != window) {
+            connection.setLoadWindow(window);
+            activeConnections++;
+        }
+        windowMessages++;
+        connection.setLoad(++load);
+        return load;
+    }
+
+    private int decayedLoad(ClientConnection connection) {
+        long age = window - connection.getLoadWindow();
+        return age == 0 ? connection.getLoad() : age >= 31 ? 0 : connection.getLoad() >>> age;
+    }
+
+    // ==================== 过载检测（检测周期到期时） ====================
+
+    private void check(long now) {
+        long lagNanos = eventLoop.takeMaxLagNanos();
+        long queueDepth = businessMetrics.getQueueDepth();
+        boolean overloaded = (lagThresholdNanos > 0 && lagNanos >= lagThresholdNanos)
+                || (queueDepthThreshold > 0 && queueDepth >= queueDepthThreshold);
+        // 稳定速率r的连接load约为2r，平均负载取同一口径
+        int share = (int) Math.min(Integer.MAX_VALUE, 2L * windowMessages / Math.max(1, activeConnections));
+        fairShareLoad = level == NORMAL ? share : Math.max(fairShareLoad, share);
+
+        if (overloaded) {
+            if (level == NORMAL) {
+                overloadSince = now;
+                System.err.println(eventLoop.getName() + " 过载：最大延迟" + lagNanos / 1000000 + "ms，业务队列深度"
+                        + queueDepth + "，暂停读取负载最重的连接");
+            }
+            long duration = now - overloadSince;
+            int target = duration >= disconnectAfterMillis ? DISCONNECT : duration >= rejectAfterMillis ? REJECT : PAUSE;
+            if (target > level) {
+                System.err.println(eventLoop.getName() + " 持续过载" + duration + "ms，"
+                        + (target == REJECT ? "对高负载连接回复繁忙" : "断开被暂停的连接"));
+            }
+            level = Math.max(level, target);
+            if (level == DISCONNECT) {
+                disconnectShed();
+            }
+            shedHeaviest();
+        } else if (level != NORMAL) {
+            // 逐批放开，避免被暂停的连接同时恢复再次压垮本循环
+            for (int i = 0; i < heaviest.length && !shedList.isEmpty(); i++) {
+                ClientConnection connection = shedList.remove(shedList.size() - 1);
+                connection.setShed(false);
+                eventHandler.updateReadInterest(connection);
+            }
+            if (shedList.isEmpty()) {
+                level = NORMAL;
+                System.out.println(eventLoop.getName() + " 负载已恢复");
+            }
+        }
+        metrics.setOverloadLevel(level);
+
+        window++;
+        windowMessages = 0;
+        activeConnections = 0;
+    }
+
+    /**
+     * 负载达到平均负载的一半以上
+     */
+    private boolean isHeavy(int load) {
+        return 2L * load > fairShareLoad;
+    }
+
+    /**
+     * 暂停读取最重的N个连接（只考虑负载达到平均一半以上的）
+     */
+    private void shedHeaviest() {
+        int found = 0;
+        for (int i = 0; i < connections.size(); i++) {
+            ClientConnection connection = connections.get(i);
+            int load = decayedLoad(connection);
+            if (connection.isShed() || !isHeavy(load)) {
+                continue;
+            }
+            int index;
+            if (found < heaviest.length) {
+                index = found++;
+            } else if (load > decayedLoad(heaviest[heaviest.length - 1])) {
+                index = heaviest.length - 1;
+            } else {
+                continue;
+            }
+            while (index > 0 && decayedLoad(heaviest[index - 1]) < load) {
+                heaviest[index] = heaviest[index - 1];
+                index--;
+            }
+            heaviest[index] = connection;
+        }
+        for (int i = 0; i < found; i++) {
+            ClientConnection connection = heaviest[i];
+            heaviest[i] = null;
+            connection.setShed(true);
+            shedList.add(connection);
+            eventHandler.updateReadInterest(connection);
+            metrics.onOverloadPaused();
+        }
+    }
+
+    /**
+     * 断开最早被暂停（暂停时负载最重）的N个连接
+     */
+    private void disconnectShed() {
+        for (int i = 0; i < heaviest.length && !shedList.isEmpty(); i++) {
+            SelectionKey key = shedList.get(0).getKey();
+            metrics.onOverloadDisconnect();
+            eventHandler.closeConnection(key); // 经onClose移出shedList
+        }
+    }
+
+    private final class OverloadCheck extends HashedTimingWheel.Timeout {
+        @Override
+        protected void expire(long nowMillis) {
+            check(nowMillis);
+            timingWheel.schedule(this, nowMillis + checkMillis);
+        }
+    }
+
+    private final class ThrottleTimeout extends HashedTimingWheel.Timeout {
+        private final ClientConnection connection;
+
+        ThrottleTimeout(ClientConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void expire(long nowMillis) {
+            connection.setThrottled(false);
+            eventHandler.updateReadInterest(connection);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.Objects;
+
+/**
+ * 广播与主题推送：消息在调用线程只编码一次，各事件循环各拿一个引用，
+ * 在自己的线程里给本循环的连接（或主题订阅方）入队一个共享内存的只读视图。
+ * <ul>
+ *     <li>序列化次数与接收方数量无关，每个接收方只多一个视图对象</li>
+ *     <li>推送工作分散到所有worker事件循环，每个循环只遍历自己的连接，无锁</li>
+ *     <li>消费过慢的连接按 {@link NioServerConfig#getSlowSubscriberPolicy()} 丢弃推送或断开</li>
+ * </ul>
+ * 推送帧已编码，不经过流水线的出站处理器，也不压缩。所有方法线程安全。
+ */
+public class Broadcaster {
+    private final NioEventLoop[] eventLoops;
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+
+    public Broadcaster(NioEventLoop[] eventLoops) {
+        this.eventLoops = eventLoops;
+    }
+
+    /**
+     * 推送给所有连接
+     */
+    public void broadcast(BusinessMessage message) {
+        fanOut(null, message);
+    }
+
+    /**
+     * 推送给主题的所有订阅方
+     */
+    public void publish(String topic, BusinessMessage message) {
+        fanOut(Objects.requireNonNull(topic, "topic"), message);
+    }
+
+    public void subscribe(ClientConnection connection, String topic) {
+        connection.getEventLoop().subscribe(connection, Objects.requireNonNull(topic, "topic"));
+    }
+
+    public void unsubscribe(ClientConnection connection, String topic) {
+        connection.getEventLoop().unsubscribe(connection, topic);
+    }
+
+    private void fanOut(String topic, BusinessMessage message) {
+        PooledByteBuffer frame = encoder.encode(message);
+        try {
+            for (NioEventLoop eventLoop : eventLoops) {
+                eventLoop.fanOut(topic, frame.retain());
+            }
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.xiaohashu.second.NIO;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 业务执行阶段：位于解码器和业务处理器之间，让事件循环只负责IO和拆包。
+ * 同一连接的消息经由连接自己的 {@link SerialExecutor} 提交，保证按到达顺序处理。
+ */
+public class BusinessExecutor {
+    private final BusinessExecutorType type;
+    private final BusinessHandler handler;
+    private final ExecutorService executorService; // INLINE模式下为null
+    private final StageMetrics metrics = new StageMetrics("business");
+
+    public BusinessExecutor(BusinessExecutorType type, int threads, BusinessHandler handler) {
+        this.handler = handler;
+        if (type == BusinessExecutorType.INLINE) {
+            this.type = type;
+            this.executorService = null;
+            return;
+        }
+        ExecutorService virtual = type == BusinessExecutorType.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.type = BusinessExecutorType.VIRTUAL;
+            this.executorService = virtual;
+        } else {
+            if (type == BusinessExecutorType.VIRTUAL) {
+                System.err.println("当前JDK不支持虚拟线程，业务执行阶段退化为固定线程池");
+            }
+            this.type = BusinessExecutorType.FIXED;
+            this.executorService = Executors.newFixedThreadPool(threads, new BusinessThreadFactory());
+        }
+    }
+
+    /**
+     * 分发一条已解码的消息（在事件循环线程调用）
+     */
+    public void dispatch(ClientConnection connection, BusinessMessage message) {
+        metrics.onSubmit();
+        long submitNanos = System.nanoTime();
+        if (executorService == null) {
+            invoke(connection, message, submitNanos);
+            return;
+        }
+        connection.getSerialExecutor(executorService).execute(() -> invoke(connection, message, submitNanos));
+    }
+
+    private void invoke(ClientConnection connection, BusinessMessage message, long submitNanos) {
+        long startNanos = System.nanoTime();
+        try {
+            handler.handle(connection, message);
+        } catch (Exception e) {
+            System.err.println("业务处理异常: " + e.getMessage());
+        } finally {
+            metrics.onComplete(submitNanos, startNanos, System.nanoTime());
+        }
+    }
+
+    public void shutdown() {
+        if (executorService == null) {
+            return;
+        }
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public BusinessExecutorType getType() { return type; }
+    public StageMetrics getMetrics() { return metrics; }
+
+    /**
+     * 通过反射获取 Executors.newVirtualThreadPerTaskExecutor()，兼容JDK 8编译
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class BusinessThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nio-business-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
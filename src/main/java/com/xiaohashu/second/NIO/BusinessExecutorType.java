@@ -0,0 +1,20 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 业务执行阶段的线程模型
+ */
+public enum BusinessExecutorType {
+    INLINE("在事件循环线程直接执行"),
+    FIXED("固定大小线程池"),
+    VIRTUAL("每任务一个虚拟线程（JDK 21+，低版本退化为固定线程池）");
+
+    private final String desc;
+
+    BusinessExecutorType(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
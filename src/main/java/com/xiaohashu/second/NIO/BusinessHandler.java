@@ -0,0 +1,10 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 业务处理器：在业务执行阶段调用，同一连接的消息按到达顺序串行处理。
+ * 可能运行在业务线程上，回写响应需通过 {@link NioEventLoop#sendMessage} 交回所属事件循环。
+ */
+public interface BusinessHandler {
+
+    void handle(ClientConnection connection, BusinessMessage message);
+}
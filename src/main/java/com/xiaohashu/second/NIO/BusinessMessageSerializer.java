@@ -0,0 +1,30 @@
+package com.xiaohashu.second.NIO;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * BusinessMessage 的手写序列化器：按固定字段顺序读写，不走反射和字段元数据。
+ * 格式：messageId(varlong) messageType(varint) sendTime(varlong) content(UTF-8，长度前缀，可为null)
+ */
+public class BusinessMessageSerializer extends Serializer<BusinessMessage> {
+
+    @Override
+    public void write(Kryo kryo, Output output, BusinessMessage message) {
+        output.writeVarLong(message.getMessageId(), true);
+        output.writeVarInt(message.getMessageType(), true);
+        output.writeVarLong(message.getSendTime(), true);
+        output.writeString(message.getContent());
+    }
+
+    @Override
+    public BusinessMessage read(Kryo kryo, Input input, Class<? extends BusinessMessage> type) {
+        long messageId = input.readVarLong(true);
+        int messageType = input.readVarInt(true);
+        long sendTime = input.readVarLong(true);
+        String content = input.readString();
+        return new BusinessMessage(messageId, content, sendTime, messageType);
+    }
+}
@@ -0,0 +1,314 @@
+package com.xiaohashu.second.NIO;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 连接的处理器流水线：入站方向 读缓冲区 → 各入站处理器 → 业务执行阶段；
+ * 出站方向 业务消息 → 各出站处理器（逆序） → 出站队列。
+ * <p>
+ * 流水线只在所属事件循环线程修改和使用，其它线程的增删操作会提交到事件循环执行。
+ * 当流水线恰好是默认的 Kryo解码器+编码器 时，读写直接调用这两个final类（单态调用点，JIT可内联整条链路），
+ * 只有加入自定义处理器后才走通用的接口分派。两条路径上处理器抛出的异常都交给 {@link #exceptionCaught}，关闭连接。
+ */
+public class ChannelPipeline {
+    public static final String DECODER = "decoder";
+    public static final String ENCODER = "encoder";
+
+    // 正在被某个流水线使用的非共享处理器实例
+    private static final Set<Object> NON_SHARABLE_IN_USE =
+            Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    private final ClientConnection connection;
+    private final EventHandler eventHandler;
+    private HandlerContext first;
+    private HandlerContext last;
+    private HandlerContext firstInbound;  // 入站入口
+    private HandlerContext lastOutbound;  // 出站入口
+
+    // 默认链路快速通道，非默认链路时为null
+    private KryoDecoderHandler defaultDecoder;
+    private HandlerContext defaultDecoderCtx;
+    private KryoEncoderHandler defaultEncoder;
+    private HandlerContext defaultEncoderCtx;
+    private boolean closed; // 处理器异常或连接已关闭，之后的入站消息丢弃
+
+    public ChannelPipeline(ClientConnection connection, EventHandler eventHandler) {
+        this.connection = connection;
+        this.eventHandler = eventHandler;
+    }
+
+    // ==================== 数据传递 ====================
+
+    /**
+     * 读到数据后从流水线头部开始处理
+     */
+    public void fireRead(Object msg) {
+        if (defaultDecoder != null) {
+            try {
+                defaultDecoder.channelRead(defaultDecoderCtx, msg);
+            } catch (RuntimeException e) {
+                exceptionCaught(defaultDecoderCtx, e);
+            }
+            return;
+        }
+        HandlerContext ctx = firstInbound;
+        if (ctx == null) {
+            tailRead(msg);
+            return;
+        }
+        try {
+            ctx.inboundHandler.channelRead(ctx, msg);
+        } catch (Exception e) {
+            exceptionCaught(ctx, e);
+        }
+    }
+
+    /**
+     * 从流水线尾部开始写出消息（只入队，不发送）
+     */
+    public void write(Object msg) {
+        if (defaultEncoder != null) {
+            try {
+                defaultEncoder.write(defaultEncoderCtx, msg);
+            } catch (RuntimeException e) {
+                exceptionCaught(defaultEncoderCtx, e);
+            }
+            return;
+        }
+        HandlerContext ctx = lastOutbound;
+        if (ctx == null) {
+            headWrite(msg);
+            return;
+        }
+        try {
+            ctx.outboundHandler.write(ctx, msg);
+        } catch (Exception e) {
+            exceptionCaught(ctx, e);
+        }
+    }
+
+    public void flush() {
+        eventHandler.flush(connection);
+    }
+
+    /**
+     * 入站消息到达流水线末尾：业务消息交给业务执行阶段，流分块交给流接收目标
+     */
+    void tailRead(Object msg) {
+        if (closed) {
+            return; // 处理器异常已关闭连接，同一批解出的后续消息不再处理
+        }
+        if (msg instanceof BusinessMessage) {
+            eventHandler.dispatch(connection, (BusinessMessage) msg);
+        } else if (msg instanceof StreamChunk) {
+            eventHandler.onStreamChunk(connection, (StreamChunk) msg);
+        } else if (msg instanceof ByteBuffer) {
+            ((ByteBuffer) msg).clear(); // 没有解码器消费，丢弃原始字节，避免接收缓冲区无限增长
+            System.err.println("流水线中没有解码器，丢弃入站数据");
+        } else {
+            System.err.println("入站消息未被处理: " + msg.getClass().getName());
+        }
+    }
+
+    /**
+     * 出站消息到达流水线头部：必须已编码为池化缓冲区，或为文件区域（其文件头帧已先行入队）
+     */
+    void headWrite(Object msg) {
+        if (msg instanceof PooledByteBuffer) {
+            eventHandler.enqueue(connection, (PooledByteBuffer) msg);
+        } else if (msg instanceof FileRegion) {
+            eventHandler.enqueue(connection, (FileRegion) msg);
+        } else {
+            System.err.println("出站消息未编码，已丢弃: " + msg.getClass().getName());
+        }
+    }
+
+    /**
+     * 处理器抛出异常：连接状态已不可信（可能解码到一半），丢弃之后的入站消息并关闭连接。
+     * 关闭提交到本轮任务阶段执行，外层处理器此时可能还在使用连接的接收缓冲区
+     */
+    void exceptionCaught(HandlerContext ctx, Exception e) {
+        System.err.println("处理器[" + ctx.name() + "]异常，关闭连接: " + e);
+        if (closed) {
+            return;
+        }
+        closed = true;
+        SelectionKey key = connection.getKey();
+        if (key != null) {
+            connection.getEventLoop().execute(() -> eventHandler.closeConnection(key));
+        }
+    }
+
+    // ==================== 增删处理器 ====================
+
+    public ChannelPipeline addLast(String name, Object handler) {
+        return addBefore(null, name, handler);
+    }
+
+    public ChannelPipeline addFirst(String name, Object handler) {
+        return addBefore(first == null ? null : first.name(), name, handler);
+    }
+
+    /**
+     * 在baseName之前插入处理器，baseName为null时加到末尾
+     */
+    public ChannelPipeline addBefore(String baseName, String name, Object handler) {
+        if (!inEventLoop()) {
+            connection.getEventLoop().execute(() -> addBefore(baseName, name, handler));
+            return this;
+        }
+        if (find(name) != null) {
+            throw new IllegalArgumentException("处理器名称重复: " + name);
+        }
+        HandlerContext base = baseName == null ? null : context(baseName);
+        acquire(handler);
+        HandlerContext ctx = new HandlerContext(this, name, handler);
+        HandlerContext prev = base == null ? last : base.prev;
+        ctx.prev = prev;
+        ctx.next = base;
+        if (prev == null) {
+            first = ctx;
+        } else {
+            prev.next = ctx;
+        }
+        if (base == null) {
+            last = ctx;
+        } else {
+            base.prev = ctx;
+        }
+        rebuild();
+        return this;
+    }
+
+    public ChannelPipeline remove(String name) {
+        if (!inEventLoop()) {
+            connection.getEventLoop().execute(() -> remove(name));
+            return this;
+        }
+        unlink(context(name));
+        rebuild();
+        return this;
+    }
+
+    public ChannelPipeline replace(String oldName, String newName, Object handler) {
+        if (!inEventLoop()) {
+            connection.getEventLoop().execute(() -> replace(oldName, newName, handler));
+            return this;
+        }
+        HandlerContext old = context(oldName);
+        HandlerContext next = old.next;
+        unlink(old);
+        return addBefore(next == null ? null : next.name(), newName, handler);
+    }
+
+    public Object get(String name) {
+        HandlerContext ctx = find(name);
+        return ctx == null ? null : ctx.handler();
+    }
+
+    /**
+     * 连接关闭时移除所有处理器，释放非共享处理器的占用标记
+     */
+    void destroy() {
+        closed = true;
+        for (HandlerContext ctx = first; ctx != null; ctx = ctx.next) {
+            NON_SHARABLE_IN_USE.remove(ctx.handler());
+        }
+        first = last = firstInbound = lastOutbound = null;
+        defaultDecoder = null;
+        defaultEncoder = null;
+    }
+
+    private void unlink(HandlerContext ctx) {
+        if (ctx.prev == null) {
+            first = ctx.next;
+        } else {
+            ctx.prev.next = ctx.next;
+        }
+        if (ctx.next == null) {
+            last = ctx.prev;
+        } else {
+            ctx.next.prev = ctx.prev;
+        }
+        NON_SHARABLE_IN_USE.remove(ctx.handler());
+    }
+
+    /**
+     * 重新计算入站/出站跳转指针和默认链路快速通道
+     */
+    private void rebuild() {
+        HandlerContext nextInbound = null;
+        for (HandlerContext ctx = last; ctx != null; ctx = ctx.prev) {
+            ctx.nextInbound = nextInbound;
+            if (ctx.inboundHandler != null) {
+                nextInbound = ctx;
+            }
+        }
+        firstInbound = nextInbound;
+
+        HandlerContext prevOutbound = null;
+        for (HandlerContext ctx = first; ctx != null; ctx = ctx.next) {
+            ctx.prevOutbound = prevOutbound;
+            if (ctx.outboundHandler != null) {
+                prevOutbound = ctx;
+            }
+        }
+        lastOutbound = prevOutbound;
+
+        boolean defaultChain = first != null && first.next == last && last != null
+                && first.handler() instanceof KryoDecoderHandler && last.handler() instanceof KryoEncoderHandler;
+        defaultDecoder = defaultChain ? (KryoDecoderHandler) first.handler() : null;
+        defaultDecoderCtx = defaultChain ? first : null;
+        defaultEncoder = defaultChain ? (KryoEncoderHandler) last.handler() : null;
+        defaultEncoderCtx = defaultChain ? last : null;
+    }
+
+    private void acquire(Object handler) {
+        if (!(handler instanceof InboundHandler) && !(handler instanceof OutboundHandler)) {
+            throw new IllegalArgumentException("处理器必须实现InboundHandler或OutboundHandler: " + handler.getClass().getName());
+        }
+        if (!handler.getClass().isAnnotationPresent(Sharable.class) && !NON_SHARABLE_IN_USE.add(handler)) {
+            throw new IllegalStateException("非@Sharable处理器不能加入多个流水线: " + handler.getClass().getName());
+        }
+    }
+
+    private HandlerContext find(String name) {
+        for (HandlerContext ctx = first; ctx != null; ctx = ctx.next) {
+            if (ctx.name().equals(name)) {
+                return ctx;
+            }
+        }
+        return null;
+    }
+
+    private HandlerContext context(String name) {
+        HandlerContext ctx = find(name);
+        if (ctx == null) {
+            throw new IllegalArgumentException("处理器不存在: " + name);
+        }
+        return ctx;
+    }
+
+    private boolean inEventLoop() {
+        return connection.getEventLoop().inEventLoop();
+    }
+
+    /**
+     * 是否为默认的解码器+编码器链路（走单态快速通道）
+     */
+    public boolean isDefaultChain() {
+        return defaultDecoder != null;
+    }
+
+    public ClientConnection connection() {
+        return connection;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+}
@@ -1,39 +1,252 @@
 package com.xiaohashu.second.NIO;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
+/**
+ * 连接状态（仅在所属事件循环线程访问）。空闲连接不持有任何缓冲区：
+ * <ul>
+ *     <li>读事件先读入事件循环共享的读缓冲区，解码后只有留下半包时才从池中借一块缓冲区保存半包，
+ *     半包解完即归还；半包帧头已到达时按帧长度一次借够，不逐次翻倍拷贝</li>
+ *     <li>出站帧本身是池化缓冲区，写出即归还；出站队列的环形数组也只在有帧排队时存在</li>
+ *     <li>业务串行执行器、订阅主题集合、分块流状态在首次使用时才创建</li>
+ * </ul>
+ * 每个空闲连接的服务端开销约1.2KB堆内存、0直接内存（按需借用之前为约1.5KB堆内存 + 8KB直接内存）：
+ * 其中连接状态、流水线、出站队列、空闲检测节点和Selector注册约0.7KB，其余为服务端的JDK SocketChannel。
+ * 可用测试 ConnectionFootprintTest 复测。
+ */
 public class ClientConnection {
+    private static final int BUFFER_SIZE = 8192; // 8KB，半包缓冲区的最小规格
+    private long id;                        // 连接ID，见 ConnectionRegistry，注册前为0
+    private int localIndex = -1;            // 在所属事件循环连接列表中的下标，未注册或已关闭时为-1
     private final SocketChannel channel;
-    private final ByteBuffer receiveBuffer; // 接收缓冲区
-    private final ByteBuffer sendBuffer;    // 发送缓冲区
-    private long lastActiveTime;            // 最后活跃时间
+    private PooledByteBuffer receiveBuffer;       // 半包缓冲区（池化直接内存，写模式），没有半包时为null
+    private final OutboundBuffer outboundBuffer;  // 出站帧队列
+    private long lastReadTime;              // 最后一次读到数据的时间
+    private long lastWriteTime;             // 最后一次写出数据的时间
+    private HashedTimingWheel.Timeout[] idleTimeouts; // 空闲检测节点
+    private SelectionKey key;               // 在所属worker Selector上的注册键
+    private final NioEventLoop eventLoop;   // 所属worker事件循环
+    private SerialExecutor serialExecutor;  // 业务阶段的串行执行器，首次分发时创建
+    private ChannelPipeline pipeline;       // 处理器流水线
+    private boolean flushScheduled;         // 已加入本轮事件循环末尾的flush列表
+    private boolean readPaused;             // 出站队列超过高水位线，暂停读取
+    private boolean throttled;              // 超过连接级速率，暂停读取到下一个令牌可用
+    private boolean shed;                   // 过载保护暂停读取，负载恢复后放开
+    private TokenBucket rateLimiter;        // 连接级限流令牌桶，首次分发时创建，未启用时为null
+    private HashedTimingWheel.Timeout throttleTimeout; // 限流暂停后恢复读取的定时节点，首次限流时创建
+    private int load;                       // 近期消息数，每个过载检测周期减半，过载时据此挑选最重的连接
+    private long loadWindow = -1;           // load对应的检测周期序号
+    private Set<String> topics;             // 订阅的主题（关闭时据此退订），未订阅时为null
+    private Map<Long, InboundStream> streams; // 正在接收的分块流，没有时为null
+    private long streamPendingBytes;        // 已交给流写出线程、尚未写完的字节数
+    private boolean streamPaused;           // 流数据积压超过上限，暂停读取直到写出线程追上
 
-    public ClientConnection(SocketChannel channel) {
+    public ClientConnection(SocketChannel channel, NioEventLoop eventLoop, OutboundBuffer outboundBuffer) {
         this.channel = channel;
-        this.receiveBuffer = ByteBuffer.allocate(8192); // 8KB
-        this.sendBuffer = ByteBuffer.allocate(8192);
-        this.lastActiveTime = System.currentTimeMillis();
+        this.eventLoop = eventLoop;
+        this.outboundBuffer = outboundBuffer;
+        this.lastReadTime = this.lastWriteTime = eventLoop.currentTimeMillis();
     }
 
-    // 追加接收数据
-    public void appendReceiveBuffer(ByteBuffer buffer) {
-        receiveBuffer.put(buffer);
+    /**
+     * 解码后共享读缓冲区（写模式）中留有半包：借一块缓冲区保存，并清空共享缓冲区
+     */
+    public void retainPartial(ByteBuffer shared) {
+        int partial = shared.position();
+        int capacity = Math.max(BUFFER_SIZE, partial);
+        if (partial >= 4) {
+            int frameLength = shared.getInt(0);
+            if (frameLength > capacity && frameLength <= KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+                capacity = frameLength; // 帧头已到，一次借够整帧
+            }
+        }
+        receiveBuffer = PooledBufferAllocator.getInstance().allocate(capacity);
+        shared.flip();
+        receiveBuffer.buffer().put(shared);
+        shared.clear();
     }
 
-    // 追加发送数据
-    public void appendSendBuffer(ByteBuffer buffer) {
-        sendBuffer.put(buffer);
+    /**
+     * 半包缓冲区已满（半包超过当前容量）时扩容为两倍，保留已接收数据
+     */
+    public ByteBuffer growReceiveBuffer(int maxCapacity) {
+        ByteBuffer old = receiveBuffer.buffer();
+        if (old.capacity() >= maxCapacity) {
+            throw new IllegalStateException("接收缓冲区已达上限: " + maxCapacity);
+        }
+        receiveBuffer = copyToLarger(receiveBuffer, Math.min(old.capacity() << 1, maxCapacity));
+        return receiveBuffer.buffer();
     }
 
-    // 更新活跃时间
-    public void updateLastActiveTime() {
-        this.lastActiveTime = System.currentTimeMillis();
+    /**
+     * 半包已全部解码时把缓冲区归还给池
+     */
+    public void releaseReceiveBufferIfEmpty() {
+        if (receiveBuffer != null && receiveBuffer.buffer().position() == 0) {
+            receiveBuffer.release();
+            receiveBuffer = null;
+        }
+    }
+
+    /**
+     * 把写模式缓冲区中已写入的数据搬到新规格的缓冲区，并释放旧缓冲区
+     */
+    private static PooledByteBuffer copyToLarger(PooledByteBuffer old, int capacity) {
+        PooledByteBuffer replacement = PooledBufferAllocator.getInstance().allocate(capacity);
+        ByteBuffer oldBuffer = old.buffer();
+        oldBuffer.flip();
+        replacement.buffer().put(oldBuffer);
+        old.release();
+        return replacement;
+    }
+
+    /**
+     * 连接关闭时归还缓冲区（在所属事件循环线程调用）
+     */
+    public void releaseBuffers() {
+        if (receiveBuffer != null) {
+            receiveBuffer.release();
+            receiveBuffer = null;
+        }
+        outboundBuffer.releaseAll();
+    }
+
+    // 更新活跃时间（只记时间戳，空闲检测到期时再比较）
+    public void markRead(long nowMillis) {
+        this.lastReadTime = nowMillis;
+    }
+
+    public void markWrite(long nowMillis) {
+        this.lastWriteTime = nowMillis;
+    }
+
+    /**
+     * 获取本连接的串行执行器（仅在所属事件循环线程调用）
+     */
+    public SerialExecutor getSerialExecutor(Executor delegate) {
+        if (serialExecutor == null) {
+            serialExecutor = new SerialExecutor(delegate);
+        }
+        return serialExecutor;
+    }
+
+    /**
+     * 记录订阅的主题（仅在所属事件循环线程调用）
+     *
+     * @return 是否为新订阅
+     */
+    boolean addTopic(String topic) {
+        if (topics == null) {
+            topics = new HashSet<>(4);
+        }
+        return topics.add(topic);
+    }
+
+    boolean removeTopic(String topic) {
+        return topics != null && topics.remove(topic);
+    }
+
+    InboundStream getStream(long streamId) {
+        return streams == null ? null : streams.get(streamId);
+    }
+
+    int getStreamCount() {
+        return streams == null ? 0 : streams.size();
+    }
+
+    void putStream(long streamId, InboundStream stream) {
+        if (streams == null) {
+            streams = new HashMap<>(4);
+        }
+        streams.put(streamId, stream);
+    }
+
+    InboundStream removeStream(long streamId) {
+        if (streams == null) {
+            return null;
+        }
+        InboundStream stream = streams.remove(streamId);
+        if (streams.isEmpty()) {
+            streams = null;
+        }
+        return stream;
+    }
+
+    /**
+     * 取出所有未结束的流（连接关闭时中止）
+     */
+    Collection<InboundStream> drainStreams() {
+        if (streams == null) {
+            return Collections.emptyList();
+        }
+        Collection<InboundStream> open = streams.values();
+        streams = null;
+        return open;
+    }
+
+    /**
+     * 正在接收的分块流：开始消息 + 数据目标（拒绝时为null，分块丢弃）。
+     * 数据目标的回调都经writer按顺序在流写出线程执行；写出失败后置failed，其余分块丢弃
+     */
+    static final class InboundStream {
+        final BusinessMessage header;
+        final StreamHandler.StreamSink sink;
+        final SerialExecutor writer;
+        volatile boolean failed;
+
+        InboundStream(BusinessMessage header, StreamHandler.StreamSink sink, SerialExecutor writer) {
+            this.header = header;
+            this.sink = sink;
+            this.writer = writer;
+        }
     }
 
     // Getter & Setter
+    public long getId() { return id; }
+    void setId(long id) { this.id = id; }
+    int getLocalIndex() { return localIndex; }
+    void setLocalIndex(int localIndex) { this.localIndex = localIndex; }
     public SocketChannel getChannel() { return channel; }
-    public ByteBuffer getReceiveBuffer() { return receiveBuffer; }
-    public ByteBuffer getSendBuffer() { return sendBuffer; }
-    public long getLastActiveTime() { return lastActiveTime; }
+    public ByteBuffer getReceiveBuffer() { return receiveBuffer == null ? null : receiveBuffer.buffer(); }
+    public OutboundBuffer getOutboundBuffer() { return outboundBuffer; }
+    public long getLastReadTime() { return lastReadTime; }
+    public long getLastWriteTime() { return lastWriteTime; }
+    public long getLastActiveTime() { return Math.max(lastReadTime, lastWriteTime); }
+    public HashedTimingWheel.Timeout[] getIdleTimeouts() { return idleTimeouts; }
+    public void setIdleTimeouts(HashedTimingWheel.Timeout[] idleTimeouts) { this.idleTimeouts = idleTimeouts; }
+    public SelectionKey getKey() { return key; }
+    public NioEventLoop getEventLoop() { return eventLoop; }
+    public ChannelPipeline getPipeline() { return pipeline; }
+    public void setPipeline(ChannelPipeline pipeline) { this.pipeline = pipeline; }
+    public void setKey(SelectionKey key) { this.key = key; }
+    public boolean isFlushScheduled() { return flushScheduled; }
+    public void setFlushScheduled(boolean flushScheduled) { this.flushScheduled = flushScheduled; }
+    public boolean isReadPaused() { return readPaused; }
+    Set<String> getTopics() { return topics; }
+    public void setReadPaused(boolean readPaused) { this.readPaused = readPaused; }
+    boolean isThrottled() { return throttled; }
+    void setThrottled(boolean throttled) { this.throttled = throttled; }
+    boolean isShed() { return shed; }
+    void setShed(boolean shed) { this.shed = shed; }
+    long getStreamPendingBytes() { return streamPendingBytes; }
+    void addStreamPendingBytes(long delta) { this.streamPendingBytes += delta; }
+    boolean isStreamPaused() { return streamPaused; }
+    void setStreamPaused(boolean streamPaused) { this.streamPaused = streamPaused; }
+    TokenBucket getRateLimiter() { return rateLimiter; }
+    void setRateLimiter(TokenBucket rateLimiter) { this.rateLimiter = rateLimiter; }
+    HashedTimingWheel.Timeout getThrottleTimeout() { return throttleTimeout; }
+    void setThrottleTimeout(HashedTimingWheel.Timeout throttleTimeout) { this.throttleTimeout = throttleTimeout; }
+    int getLoad() { return load; }
+    void setLoad(int load) { this.load = load; }
+    long getLoadWindow() { return loadWindow; }
+    void setLoadWindow(long loadWindow) { this.loadWindow = loadWindow; }
 }
\ No newline at end of file
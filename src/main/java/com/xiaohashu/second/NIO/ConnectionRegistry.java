@@ -0,0 +1,114 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 连接注册表：给每个连接分配一个long型ID（高32位为槽位代数，低32位为槽位号），按槽位号直接索引分页数组。
+ * <ul>
+ *     <li>按ID查找只有两次数组下标访问和一次ID比较，不哈希、不分配对象，任意线程可调用</li>
+ *     <li>连接关闭后槽位回收复用，代数加一：持有旧ID的调用方与新连接的ID不相等，查到null，不会发给别的连接</li>
+ *     <li>槽位按页（4096个）按需分配，扩容只复制页目录，已有页不搬动；百万连接约250页</li>
+ * </ul>
+ * 注册和注销由各事件循环在连接建立、关闭时调用（加锁，不在收发路径上），查找无锁。
+ */
+public final class ConnectionRegistry {
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile Page[] pages = new Page[16];
+    private int[] freeSlots = new int[PAGE_SIZE]; // 已回收的槽位（栈）
+    private int freeCount;
+    private int nextSlot;                         // 从未使用过的最小槽位号
+    private volatile int size;
+
+    /**
+     * 登记新连接并分配ID（仅在所属事件循环线程调用）
+     */
+    synchronized long register(ClientConnection connection) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (nextSlot < 0) {
+                throw new IllegalStateException("连接槽位已用尽");
+            }
+            slot = nextSlot++;
+        }
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        int generation = ++page.generations[index];
+        if (generation == 0) {
+            generation = page.generations[index] = 1; // ID为0保留为无效值
+        }
+        long id = ((long) generation << 32) | slot;
+        connection.setId(id);
+        page.connections.set(index, connection); // 有序写，其它线程查到时ID已可见
+        size++;
+        return id;
+    }
+
+    /**
+     * 注销连接，槽位留待复用（仅在所属事件循环线程调用）
+     */
+    synchronized void unregister(ClientConnection connection) {
+        int slot = (int) connection.getId();
+        Page[] current = pages;
+        if (connection.getId() == 0 || (slot >>> PAGE_SHIFT) >= current.length) {
+            return;
+        }
+        Page page = current[slot >>> PAGE_SHIFT];
+        if (page == null || page.connections.get(slot & PAGE_MASK) != connection) {
+            return;
+        }
+        page.connections.set(slot & PAGE_MASK, null);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    /**
+     * 按ID查找连接，ID已失效（连接已关闭或槽位已被复用）时返回null
+     */
+    public ClientConnection get(long id) {
+        int slot = (int) id;
+        Page[] current = pages;
+        if (slot < 0 || (slot >>> PAGE_SHIFT) >= current.length) {
+            return null;
+        }
+        Page page = current[slot >>> PAGE_SHIFT];
+        if (page == null) {
+            return null;
+        }
+        ClientConnection connection = page.connections.get(slot & PAGE_MASK);
+        return connection != null && connection.getId() == id ? connection : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Page page(int slot) {
+        int pageIndex = slot >>> PAGE_SHIFT;
+        Page[] current = pages;
+        if (pageIndex >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length << 1, pageIndex + 1));
+            pages = current;
+        }
+        Page page = current[pageIndex];
+        if (page == null) {
+            page = new Page();
+            current[pageIndex] = page;
+            pages = current; // 重新发布目录，无锁读取方能看到新页
+        }
+        return page;
+    }
+
+    private static final class Page {
+        final AtomicReferenceArray<ClientConnection> connections = new AtomicReferenceArray<>(PAGE_SIZE);
+        final int[] generations = new int[PAGE_SIZE]; // 只在锁内访问
+    }
+}
@@ -0,0 +1,50 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 默认业务处理：心跳回响应，业务消息打印内容后原样回显。
+ * 响应沿用请求的 messageId，客户端据此把响应和请求配对。
+ */
+public class DefaultBusinessHandler implements BusinessHandler {
+
+    @Override
+    public void handle(ClientConnection connection, BusinessMessage message) {
+        switch (message.getMessageType()) {
+            case 1: // 心跳消息
+                System.out.println("收到心跳消息: " + message.getMessageId());
+                sendHeartbeatResponse(connection, message);
+                break;
+            case 2: // 业务消息
+                System.out.println("收到业务消息: " + message.getContent());
+                sendBusinessResponse(connection, message);
+                break;
+            default:
+                System.err.println("未知消息类型: " + message.getMessageType());
+        }
+    }
+
+    /**
+     * 发送心跳响应（关闭心跳快速通道时才会走到这里）
+     */
+    private void sendHeartbeatResponse(ClientConnection connection, BusinessMessage request) {
+        BusinessMessage response = new BusinessMessage(
+                request.getMessageId(),
+                "心跳响应",
+                System.currentTimeMillis(),
+                1
+        );
+        connection.getEventLoop().sendMessage(connection, response);
+    }
+
+    /**
+     * 回显业务消息
+     */
+    private void sendBusinessResponse(ClientConnection connection, BusinessMessage request) {
+        BusinessMessage response = new BusinessMessage(
+                request.getMessageId(),
+                request.getContent(),
+                System.currentTimeMillis(),
+                2
+        );
+        connection.getEventLoop().sendMessage(connection, response);
+    }
+}
@@ -0,0 +1,18 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 默认空闲处理：写空闲时主动发心跳，读空闲或读写都空闲时关闭连接
+ */
+public class DefaultIdleStateHandler implements IdleStateHandler {
+
+    @Override
+    public void onIdle(ClientConnection connection, IdleState state) {
+        NioEventLoop eventLoop = connection.getEventLoop();
+        if (state == IdleState.WRITER_IDLE) {
+            eventLoop.sendMessage(connection, new BusinessMessage(0, "服务端心跳", System.currentTimeMillis(), 1));
+            return;
+        }
+        System.out.println("清理超时连接（" + state.getDesc() + "）: " + connection.getChannel().socket().getRemoteSocketAddress());
+        eventLoop.closeConnection(connection);
+    }
+}
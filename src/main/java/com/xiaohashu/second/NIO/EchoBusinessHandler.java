@@ -0,0 +1,18 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 回显处理：不打印，按原ID、原类型、原内容直接回写，用于压测和基准测试
+ */
+public class EchoBusinessHandler implements BusinessHandler {
+
+    @Override
+    public void handle(ClientConnection connection, BusinessMessage message) {
+        BusinessMessage response = new BusinessMessage(
+                message.getMessageId(),
+                message.getContent(),
+                message.getSendTime(),
+                message.getMessageType()
+        );
+        connection.getEventLoop().sendMessage(connection, response);
+    }
+}
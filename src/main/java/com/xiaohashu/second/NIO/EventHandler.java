@@ -1,143 +1,519 @@
 package com.xiaohashu.second.NIO;
 
 import java.io.IOException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 public class EventHandler {
-    private static final int BUFFER_SIZE = 1024;
-    private final KryoProtocolDecoder decoder = new KryoProtocolDecoder();
-    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
-    private final Map<SocketChannel, ClientConnection> connections = new ConcurrentHashMap<>();
+    private final NioEventLoop eventLoop; // 所属worker事件循环，每个循环一个EventHandler
+    // 本循环的连接（全部连接推送时遍历），只在本线程访问；连接记录自己的下标，关闭时与末尾交换后删除
+    private final List<ClientConnection> connections = new ArrayList<>();
+    private final NioServerConfig config;
+    private final BusinessExecutor businessExecutor;
+    // 本轮事件循环内请求过flush的连接，循环末尾统一写出，多个响应合并为一次聚合写
+    private final List<ClientConnection> flushQueue = new ArrayList<>();
+    private final ByteBuffer[] gatherScratch = new ByteBuffer[OutboundBuffer.MAX_GATHER];
+    // 本循环连接的主题订阅，只在本线程访问；推送时每个循环只遍历自己的订阅方
+    private final Map<String, Set<ClientConnection>> subscriptions = new HashMap<>();
+    private final AdmissionController admissionController;
+
+    public EventHandler(NioEventLoop eventLoop, NioServerConfig config, BusinessExecutor businessExecutor) {
+        this.eventLoop = eventLoop;
+        this.config = config;
+        this.businessExecutor = businessExecutor;
+        this.admissionController = new AdmissionController(eventLoop, this, eventLoop.getTimingWheel(), connections,
+                config, businessExecutor.getMetrics());
+    }
 
     /**
-     * 处理连接事件（枚举ACCEPT_EVENT）
+     * 注册boss线程移交过来的新连接（在所属事件循环线程调用）
      */
-    public void handleAccept(SelectionKey key) throws IOException {
-        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
-        SocketChannel clientChannel = serverChannel.accept();
-        if (clientChannel != null) {
-            clientChannel.configureBlocking(false);
-            ClientConnection connection = new ClientConnection(clientChannel);
-            // 注册读事件（使用枚举的OP_CODE）
-            clientChannel.register(key.selector(), NioConstant.READ_EVENT.getOpCode(), connection);
-            connections.put(clientChannel, connection);
-            System.out.println("新客户端连接: " + clientChannel.getRemoteAddress());
+    public void handleRegister(SocketChannel clientChannel, Selector selector) throws IOException {
+        clientChannel.configureBlocking(false);
+        // 连接选项在worker线程设置，不占用接收器线程（接收缓冲区已由监听通道继承）
+        clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+        if (config.getSendBufferSize() > 0) {
+            clientChannel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBufferSize());
+        }
+        OutboundBuffer outboundBuffer = new OutboundBuffer(config.getWriteBufferHighWaterMark(),
+                config.getWriteBufferLowWaterMark());
+        ClientConnection connection = new ClientConnection(clientChannel, eventLoop, outboundBuffer);
+        // 先初始化流水线再注册读事件：初始化失败（如复用了非@Sharable处理器）时连接还没有挂到Selector上
+        ChannelPipeline pipeline = new ChannelPipeline(connection, this);
+        try {
+            config.getPipelineInitializer().initPipeline(pipeline);
+        } catch (RuntimeException e) {
+            pipeline.destroy(); // 归还已加入的非共享处理器
+            throw e;
         }
+        connection.setPipeline(pipeline);
+        // 注册读事件（使用枚举的OP_CODE）
+        SelectionKey key = clientChannel.register(selector, NioConstant.READ_EVENT.getOpCode(), connection);
+        connection.setKey(key);
+        connection.setLocalIndex(connections.size());
+        connections.add(connection);
+        eventLoop.getIdleStateMonitor().register(connection, eventLoop.currentTimeMillis());
+        long id = eventLoop.parent().getConnectionRegistry().register(connection);
+        System.out.println(eventLoop.getName() + " 新客户端连接[" + id + "]: " + clientChannel.getRemoteAddress());
     }
 
     /**
      * 处理读事件（枚举READ_EVENT）
      */
-// EventHandler的handleRead方法
     public void handleRead(SelectionKey key) throws IOException {
         SocketChannel channel = (SocketChannel) key.channel();
         ClientConnection connection = (ClientConnection) key.attachment();
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-        buffer.clear(); // 关键修复：清空临时缓冲区，避免残留旧数据
+        // 没有半包时读入事件循环共享的读缓冲区，有半包时接着读入连接借来的半包缓冲区（都是直接内存，无JDK内部拷贝）
+        ByteBuffer receiveBuffer = connection.getReceiveBuffer();
+        boolean shared = receiveBuffer == null;
+        if (shared) {
+            receiveBuffer = eventLoop.getReadBuffer();
+        } else if (!receiveBuffer.hasRemaining()) {
+            // 完整帧都已解析，缓冲区仍满说明半包大于当前容量
+            receiveBuffer = connection.growReceiveBuffer(KryoProtocolDecoder.MAX_MESSAGE_LENGTH);
+        }
 
-        int bytesRead = channel.read(buffer);
+        int bytesRead = channel.read(receiveBuffer);
         if (bytesRead == -1) {
             closeConnection(key);
             return;
         }
 
         if (bytesRead > 0) {
-            // 关键：将读取到的有效数据写入连接的接收缓冲区前，先确保buffer是读模式
-            buffer.flip();
-            connection.appendReceiveBuffer(buffer);
-            // 解析消息
-            List<BusinessMessage> messages = decoder.decode(connection.getReceiveBuffer());
-            for (BusinessMessage message : messages) {
-                processMessage(connection, message);
+            eventLoop.getMetrics().onRead(bytesRead);
+            connection.markRead(eventLoop.currentTimeMillis());
+            // 交给流水线：默认由Kryo解码器拆包反序列化，再进入业务执行阶段
+            try {
+                connection.getPipeline().fireRead(receiveBuffer);
+            } catch (RuntimeException e) {
+                if (shared) {
+                    receiveBuffer.clear(); // 共享缓冲区中的残留字节不能留给同一循环的下一个连接
+                }
+                throw e;
+            }
+            if (shared) {
+                if (receiveBuffer.position() > 0 && key.isValid() && !connection.getPipeline().isClosed()) {
+                    connection.retainPartial(receiveBuffer); // 留下半包，转存到连接自己的缓冲区
+                } else {
+                    receiveBuffer.clear();
+                }
+            } else {
+                connection.releaseReceiveBufferIfEmpty(); // 连接在处理中被关闭时已归还，这里为空操作
             }
         }
     }
 
     /**
-     * 处理写事件（枚举WRITE_EVENT）
+     * 处理写事件（枚举WRITE_EVENT）：内核发送缓冲区重新可写，继续写出积压的帧
      */
     public void handleWrite(SelectionKey key) throws IOException {
-        SocketChannel channel = (SocketChannel) key.channel();
-        ClientConnection connection = (ClientConnection) key.attachment();
-        ByteBuffer sendBuffer = connection.getSendBuffer();
+        writeOutbound((ClientConnection) key.attachment(), key);
+    }
+
+    /**
+     * 经流水线编码并入队一条消息，不立即发送（须在所属事件循环线程调用）
+     */
+    public void write(ClientConnection connection, Object message) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            if (message instanceof FileRegion) {
+                ((FileRegion) message).release();
+            }
+            return; // 连接已关闭，缓冲区已归还
+        }
+        try {
+            connection.getPipeline().write(message);
+        } catch (Exception e) {
+            System.err.println("发送消息失败: " + e.getMessage());
+        }
+    }
 
-        sendBuffer.flip(); // 切换为读模式
-        if (sendBuffer.hasRemaining()) {
-            channel.write(sendBuffer);
-            connection.updateLastActiveTime();
+    /**
+     * 流水线头部：已编码的帧进入出站队列
+     */
+    void enqueue(ClientConnection connection, PooledByteBuffer frame) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            frame.release();
+            return;
+        }
+        OutboundBuffer outboundBuffer = connection.getOutboundBuffer();
+        eventLoop.getMetrics().onEnqueued(frame.buffer().remaining());
+        outboundBuffer.write(frame);
+        if (!outboundBuffer.isWritable() && !connection.isReadPaused()) {
+            // 超过高水位线：停止读取该连接，直到出站队列回落到低水位线以下
+            connection.setReadPaused(true);
+            key.interestOps(key.interestOps() & ~NioConstant.READ_EVENT.getOpCode());
         }
-        sendBuffer.compact(); // 压缩缓冲区
+    }
+
+    /**
+     * 流水线头部：文件区域在文件头帧之后入队，发送时由出站队列transferTo
+     */
+    void enqueue(ClientConnection connection, FileRegion region) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            region.release();
+            return;
+        }
+        eventLoop.getMetrics().onEnqueued(region.remaining());
+        connection.getOutboundBuffer().write(region);
+    }
 
-        // 发送完毕，取消写事件（避免重复触发）
-        if (!sendBuffer.hasRemaining()) {
-            key.interestOps(key.interestOps() & ~NioConstant.WRITE_EVENT.getOpCode());
+    /**
+     * 流水线末尾：解码后的消息经准入控制进入业务执行阶段，被限流或过载拒绝的已回复繁忙帧
+     */
+    void dispatch(ClientConnection connection, BusinessMessage message) {
+        if (admissionController.admit(connection, message)) {
+            businessExecutor.dispatch(connection, message);
         }
     }
 
+    // ==================== 分块流接收（所属事件循环线程） ====================
+
     /**
-     * 业务消息处理
+     * 流分块到达流水线末尾：开始分块打开数据目标，数据分块拷贝后交给流写出线程，
+     * 写出线程处理完结束分块后开始消息回到本线程进入业务执行阶段。
+     * 开始分块和数据分块经过准入控制，被拒绝的流和目标打开或写入失败一样只中止该流（其余分块丢弃），不影响连接上的其它帧
      */
-    private void processMessage(ClientConnection connection, BusinessMessage message) {
-        switch (message.getMessageType()) {
-            case 1: // 心跳消息
-                System.out.println("收到心跳消息: " + message.getMessageId());
-                sendHeartbeatResponse(connection, message);
+    void onStreamChunk(ClientConnection connection, StreamChunk chunk) {
+        long streamId = chunk.getStreamId();
+        switch (chunk.getKind()) {
+            case StreamChunk.START:
+                openStream(connection, chunk);
+                break;
+            case StreamChunk.DATA: {
+                ClientConnection.InboundStream stream = connection.getStream(streamId);
+                if (stream == null || stream.sink == null || stream.failed || !chunk.getData().hasRemaining()) {
+                    break; // 被拒绝或已失败的流，数据直接丢弃
+                }
+                if (admissionController.admitStreamData(connection, chunk)) {
+                    writeStream(connection, stream, chunk.getData());
+                } else {
+                    // 换成不带目标的登记，丢弃后续分块直到结束/中止
+                    connection.putStream(streamId, new ClientConnection.InboundStream(stream.header, null, null));
+                    abortStream(stream);
+                }
                 break;
-            case 2: // 业务消息
-                System.out.println("收到业务消息: " + message.getContent());
+            }
+            case StreamChunk.END: {
+                ClientConnection.InboundStream stream = connection.removeStream(streamId);
+                if (stream == null || stream.sink == null) {
+                    break;
+                }
+                stream.writer.execute(() -> {
+                    if (stream.failed) {
+                        return;
+                    }
+                    try {
+                        stream.sink.onEnd();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("流[" + streamId + "]结束处理失败: " + e.getMessage());
+                        stream.failed = true;
+                        stream.sink.onAbort();
+                        return;
+                    }
+                    // 数据已全部写出，不再做准入判断
+                    eventLoop.execute(() -> businessExecutor.dispatch(connection, stream.header));
+                });
                 break;
+            }
             default:
-                System.err.println("未知消息类型: " + message.getMessageType());
+                abortStream(connection.removeStream(streamId));
+        }
+    }
+
+    /**
+     * 分块数据只在本次回调内有效：拷贝到池化缓冲区交给写出线程，积压超过上限时暂停读取该连接
+     */
+    private void writeStream(ClientConnection connection, ClientConnection.InboundStream stream, ByteBuffer data) {
+        int length = data.remaining();
+        PooledByteBuffer copy = PooledBufferAllocator.getInstance().allocate(length);
+        copy.buffer().put(data).flip();
+        connection.addStreamPendingBytes(length);
+        if (!connection.isStreamPaused() && connection.getStreamPendingBytes() > config.getMaxStreamPendingBytes()) {
+            connection.setStreamPaused(true);
+            updateReadInterest(connection);
+        }
+        stream.writer.execute(() -> {
+            try {
+                if (!stream.failed) {
+                    stream.sink.onData(copy.buffer());
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("流[" + stream.header.getMessageId() + "]写入失败，丢弃剩余数据: " + e.getMessage());
+                stream.failed = true;
+                stream.sink.onAbort();
+            } finally {
+                copy.release();
+                eventLoop.execute(() -> onStreamWritten(connection, length));
+            }
+        });
+    }
+
+    private void onStreamWritten(ClientConnection connection, int length) {
+        connection.addStreamPendingBytes(-length);
+        if (connection.isStreamPaused() && connection.getStreamPendingBytes() <= config.getMaxStreamPendingBytes() / 2) {
+            connection.setStreamPaused(false);
+            updateReadInterest(connection);
         }
     }
 
     /**
-     * 发送心跳响应
+     * 中止流（发送端中止或连接关闭）：排在已提交的写出之后执行
      */
-    private void sendHeartbeatResponse(ClientConnection connection, BusinessMessage request) {
-        BusinessMessage response = new BusinessMessage(
-                request.getMessageId() + 1,
-                "心跳响应",
-                System.currentTimeMillis(),
-                1
-        );
-        sendMessage(connection, response);
+    private void abortStream(ClientConnection.InboundStream stream) {
+        if (stream == null || stream.sink == null) {
+            return;
+        }
+        stream.writer.execute(() -> {
+            if (!stream.failed) {
+                stream.failed = true;
+                stream.sink.onAbort();
+            }
+        });
+    }
+
+    private void openStream(ClientConnection connection, StreamChunk chunk) {
+        long streamId = chunk.getStreamId();
+        if (connection.getStream(streamId) != null) {
+            System.err.println("流[" + streamId + "]已在接收中，忽略重复的开始分块");
+            return;
+        }
+        if (connection.getStreamCount() >= config.getMaxStreamsPerConnection()) {
+            // 不登记，后续分块找不到所属的流，直接丢弃
+            System.err.println("连接同时进行的流超过上限" + config.getMaxStreamsPerConnection() + "，丢弃流[" + streamId + "]");
+            return;
+        }
+        StreamHandler.StreamSink sink = null;
+        if (admissionController.admit(connection, chunk.getHeader())) {
+            try {
+                sink = config.getStreamHandler().open(connection, chunk.getHeader());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("打开流[" + streamId + "]的接收目标失败，丢弃数据: " + e.getMessage());
+            }
+        }
+        // 被拒绝的流也登记（占用名额），以便识别并丢弃其后续分块
+        connection.putStream(streamId, new ClientConnection.InboundStream(chunk.getHeader(), sink,
+                sink == null ? null : new SerialExecutor(eventLoop.parent().getStreamWriter())));
+    }
+
+    // ==================== 广播与主题推送（所属事件循环线程） ====================
+
+    void subscribe(ClientConnection connection, String topic) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        if (connection.addTopic(topic)) {
+            subscriptions.computeIfAbsent(topic, t -> new HashSet<>()).add(connection);
+        }
+    }
+
+    void unsubscribe(ClientConnection connection, String topic) {
+        if (connection.removeTopic(topic)) {
+            removeSubscriber(topic, connection);
+        }
+    }
+
+    private void removeSubscriber(String topic, ClientConnection connection) {
+        Set<ClientConnection> subscribers = subscriptions.get(topic);
+        if (subscribers != null && subscribers.remove(connection) && subscribers.isEmpty()) {
+            subscriptions.remove(topic);
+        }
     }
 
     /**
-     * 异步发送消息
+     * 把已编码的帧推送给本循环的所有连接（topic为null）或某主题的订阅方，每个连接入队一个只读视图。
+     * 帧已经编码，不经过流水线的出站处理器。调用方转移一个引用，推送完释放
      */
-    public void sendMessage(ClientConnection connection, BusinessMessage message) {
+    void fanOut(String topic, PooledByteBuffer frame) {
         try {
-            ByteBuffer encodedData = encoder.encode(message);
-            connection.appendSendBuffer(encodedData);
-            Selector selector = connection.getChannel().keyFor(null).selector();
-            SelectionKey key = connection.getChannel().keyFor(selector);
-
-            if (key != null && key.isValid()) {
-                key.interestOps(key.interestOps() | NioConstant.WRITE_EVENT.getOpCode());
-                selector.wakeup(); // 唤醒Selector
+            if (topic == null) {
+                for (int i = 0; i < connections.size(); i++) {
+                    deliver(connections.get(i), frame);
+                }
+            } else {
+                Set<ClientConnection> subscribers = subscriptions.get(topic);
+                if (subscribers != null) {
+                    for (ClientConnection connection : subscribers) {
+                        deliver(connection, frame);
+                    }
+                }
             }
-        } catch (Exception e) {
-            System.err.println("发送消息失败: " + e.getMessage());
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void deliver(ClientConnection connection, PooledByteBuffer frame) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        OutboundBuffer outboundBuffer = connection.getOutboundBuffer();
+        switch (config.getSlowSubscriberPolicy()) {
+            case DROP:
+                if (!outboundBuffer.isWritable()) {
+                    eventLoop.getMetrics().onBroadcastDropped();
+                    return;
+                }
+                break;
+            case BUFFER:
+                if (outboundBuffer.getPendingBytes() >= config.getBroadcastMaxPendingBytes()) {
+                    eventLoop.getMetrics().onBroadcastDropped();
+                    return;
+                }
+                break;
+            case DISCONNECT:
+                if (outboundBuffer.getPendingBytes() >= config.getBroadcastMaxPendingBytes()) {
+                    eventLoop.getMetrics().onBroadcastDropped();
+                    // 推送遍历中不修改订阅集合，关闭放到任务队列
+                    eventLoop.execute(() -> closeConnection(key));
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        enqueue(connection, frame.duplicate());
+        flush(connection);
+    }
+
+    /**
+     * 请求发送已入队的消息：在本轮事件循环末尾统一写出（须在所属事件循环线程调用）
+     */
+    public void flush(ClientConnection connection) {
+        if (!connection.isFlushScheduled()) {
+            connection.setFlushScheduled(true);
+            flushQueue.add(connection);
+        }
+    }
+
+    /**
+     * 异步发送消息 = write + flush（须在所属事件循环线程调用，其它线程使用 {@link NioEventLoop#sendMessage}）
+     */
+    public void sendMessage(ClientConnection connection, Object message) {
+        write(connection, message);
+        flush(connection);
+    }
+
+    /**
+     * 写出本轮所有请求过flush的连接（事件循环每轮末尾调用）
+     */
+    public void flushPending() {
+        for (int i = 0; i < flushQueue.size(); i++) {
+            ClientConnection connection = flushQueue.get(i);
+            connection.setFlushScheduled(false);
+            SelectionKey key = connection.getKey();
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            connection.getOutboundBuffer().flush();
+            try {
+                writeOutbound(connection, key);
+            } catch (IOException e) {
+                System.err.println("写出消息失败: " + e.getMessage());
+                closeConnection(key);
+            }
+        }
+        flushQueue.clear();
+    }
+
+    private void writeOutbound(ClientConnection connection, SelectionKey key) throws IOException {
+        OutboundBuffer outboundBuffer = connection.getOutboundBuffer();
+        long pendingBefore = outboundBuffer.getPendingBytes();
+        int framesBefore = outboundBuffer.size();
+        boolean done = outboundBuffer.writeTo(connection.getChannel(), gatherScratch);
+        if (outboundBuffer.getPendingBytes() < pendingBefore) {
+            connection.markWrite(eventLoop.currentTimeMillis());
+            eventLoop.getMetrics().onWritten(pendingBefore - outboundBuffer.getPendingBytes(),
+                    framesBefore - outboundBuffer.size());
+        }
+
+        int ops = key.interestOps();
+        int writeOp = NioConstant.WRITE_EVENT.getOpCode();
+        // 写完取消写事件（避免重复触发），没写完则等待内核缓冲区可写
+        ops = done ? ops & ~writeOp : ops | writeOp;
+        if (connection.isReadPaused() && outboundBuffer.isWritable()) {
+            connection.setReadPaused(false);
+            if (!connection.isThrottled() && !connection.isShed() && !connection.isStreamPaused()) {
+                ops |= NioConstant.READ_EVENT.getOpCode();
+            }
+        }
+        if (ops != key.interestOps()) {
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * 按出站水位线、限流、过载保护、流数据积压四种暂停原因重新计算读事件，任一原因成立即不读取
+     */
+    void updateReadInterest(ClientConnection connection) {
+        SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        int readOp = NioConstant.READ_EVENT.getOpCode();
+        boolean paused = connection.isReadPaused() || connection.isThrottled() || connection.isShed()
+                || connection.isStreamPaused();
+        int ops = paused ? key.interestOps() & ~readOp : key.interestOps() | readOp;
+        if (ops != key.interestOps()) {
+            key.interestOps(ops);
         }
     }
 
     /**
      * 关闭连接
      */
-    private void closeConnection(SelectionKey key) throws IOException {
+    void closeConnection(SelectionKey key) {
         SocketChannel channel = (SocketChannel) key.channel();
-        connections.remove(channel);
-        channel.close();
+        ClientConnection connection = (ClientConnection) key.attachment();
+        if (connection.getLocalIndex() < 0) {
+            return; // 已关闭
+        }
+        removeLocal(connection);
+        eventLoop.parent().getConnectionRegistry().unregister(connection);
         key.cancel();
-        System.out.println("客户端断开连接: " + channel.getRemoteAddress());
+        eventLoop.getIdleStateMonitor().unregister(connection);
+        admissionController.onClose(connection);
+        Set<String> topics = connection.getTopics();
+        if (topics != null) {
+            for (String topic : topics) {
+                removeSubscriber(topic, connection);
+            }
+        }
+        for (ClientConnection.InboundStream stream : connection.drainStreams()) {
+            abortStream(stream);
+        }
+        connection.getPipeline().destroy();
+        eventLoop.getMetrics().onDiscarded(connection.getOutboundBuffer().getPendingBytes());
+        connection.releaseBuffers();
+        try {
+            System.out.println("客户端断开连接: " + channel.getRemoteAddress());
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("关闭连接失败: " + e.getMessage());
+        }
+        eventLoop.onConnectionClosed();
+    }
+
+    private void removeLocal(ClientConnection connection) {
+        int index = connection.getLocalIndex();
+        ClientConnection last = connections.remove(connections.size() - 1);
+        if (last != connection) {
+            connections.set(index, last);
+            last.setLocalIndex(index);
+        }
+        connection.setLocalIndex(-1);
     }
-}
\ No newline at end of file
+}
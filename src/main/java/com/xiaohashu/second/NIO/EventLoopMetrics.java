@@ -0,0 +1,285 @@
+package com.xiaohashu.second.NIO;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个事件循环的运行指标。
+ * <ul>
+ *     <li>记录只发生在所属事件循环线程：计数器用 LongAdder，其它线程读取不加锁</li>
+ *     <li>解码耗时、循环延迟（select返回到处理该就绪键的时间）用单写者直方图记录，写入无等待</li>
+ *     <li>{@link #snapshot()} 生成区间快照（增量和分位数），同时作为JMX速率属性的数据来源</li>
+ * </ul>
+ */
+public class EventLoopMetrics implements EventLoopMetricsMBean {
+    // 按类型统计的消息类型上限，超出的类型计入最后一项
+    static final int MAX_TRACKED_TYPE = 16;
+
+    private final NioEventLoop eventLoop;
+    private final LongAdder selectCount = new LongAdder();
+    private final LongAdder emptySelectCount = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder framesRead = new LongAdder();
+    private final LongAdder framesWritten = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder encodeCount = new LongAdder();
+    private final LongAdder outboundQueueBytes = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder compressInputBytes = new LongAdder();
+    private final LongAdder compressOutputBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder broadcastDropped = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloadRejected = new LongAdder();
+    private final LongAdder overloadPaused = new LongAdder();
+    private final LongAdder overloadDisconnects = new LongAdder();
+    private volatile int overloadLevel;
+    private final LongAdder[] messagesByType = new LongAdder[MAX_TRACKED_TYPE + 1];
+    private final SingleWriterRecorder decodeRecorder = new SingleWriterRecorder(3);
+    private final SingleWriterRecorder lagRecorder = new SingleWriterRecorder(3);
+
+    // 上一次快照时的累计值，用于计算区间增量（只在snapshot中访问）
+    private long lastSnapshotMillis = System.currentTimeMillis();
+    private long lastSelects;
+    private long lastEmptySelects;
+    private long lastBytesRead;
+    private long lastBytesWritten;
+    private long lastFramesRead;
+    private long lastFramesWritten;
+    private long lastEncodeNanos;
+    private long lastEncodeCount;
+    private final long[] lastMessagesByType = new long[MAX_TRACKED_TYPE + 1];
+    private Histogram decodeInterval;
+    private Histogram lagInterval;
+    private volatile MetricsSnapshot lastSnapshot;
+
+    public EventLoopMetrics(NioEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+        for (int i = 0; i < messagesByType.length; i++) {
+            messagesByType[i] = new LongAdder();
+        }
+    }
+
+    // ==================== 记录（事件循环线程） ====================
+
+    public void onSelect(boolean empty) {
+        selectCount.increment();
+        if (empty) {
+            emptySelectCount.increment();
+        }
+    }
+
+    public void onRead(int bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void onFrameDecoded(int messageType, long nanos) {
+        framesRead.increment();
+        messagesByType[messageType >= 0 && messageType < MAX_TRACKED_TYPE ? messageType : MAX_TRACKED_TYPE].increment();
+        decodeNanos.add(nanos);
+        decodeRecorder.recordValue(nanos);
+    }
+
+    public void onEncoded(long nanos) {
+        encodeCount.increment();
+        encodeNanos.add(nanos);
+    }
+
+    /**
+     * @param inputBytes  压缩前消息体字节数
+     * @param outputBytes 实际发送的消息体字节数（压缩无收益时等于inputBytes）
+     */
+    public void onCompressed(int inputBytes, int outputBytes, long nanos) {
+        compressedFrames.increment();
+        compressInputBytes.add(inputBytes);
+        compressOutputBytes.add(outputBytes);
+        compressNanos.add(nanos);
+    }
+
+    /**
+     * 慢订阅方被跳过的一次推送
+     */
+    public void onBroadcastDropped() {
+        broadcastDropped.increment();
+    }
+
+    /**
+     * 超过连接级或类型级速率、已回复繁忙帧的一条消息
+     */
+    public void onRateLimited() {
+        rateLimited.increment();
+    }
+
+    /**
+     * 过载期间因连接负载高于平均、已回复繁忙帧的一条消息
+     */
+    public void onOverloadRejected() {
+        overloadRejected.increment();
+    }
+
+    /**
+     * 过载保护暂停读取的一个连接
+     */
+    public void onOverloadPaused() {
+        overloadPaused.increment();
+    }
+
+    public void onOverloadDisconnect() {
+        overloadDisconnects.increment();
+    }
+
+    /**
+     * 过载检测周期结束时的处理级别，见 {@link AdmissionController}
+     */
+    public void setOverloadLevel(int level) {
+        overloadLevel = level;
+    }
+
+    public void onEnqueued(long bytes) {
+        outboundQueueBytes.add(bytes);
+    }
+
+    /**
+     * @param bytes  本次写出的字节数
+     * @param frames 本次完整写出的帧数
+     */
+    public void onWritten(long bytes, int frames) {
+        bytesWritten.add(bytes);
+        framesWritten.add(frames);
+        outboundQueueBytes.add(-bytes);
+    }
+
+    /**
+     * 连接关闭时丢弃的未写出字节
+     */
+    public void onDiscarded(long bytes) {
+        outboundQueueBytes.add(-bytes);
+    }
+
+    public void onLag(long nanos) {
+        lagRecorder.recordValue(nanos);
+    }
+
+    // ==================== 快照 ====================
+
+    /**
+     * 生成自上次快照以来的区间快照（任意线程调用，多个调用方互斥）
+     */
+    public synchronized MetricsSnapshot snapshot() {
+        long now = System.currentTimeMillis();
+        decodeInterval = decodeRecorder.getIntervalHistogram(decodeInterval);
+        lagInterval = lagRecorder.getIntervalHistogram(lagInterval);
+
+        long selects = selectCount.sum();
+        long emptySelects = emptySelectCount.sum();
+        long read = bytesRead.sum();
+        long written = bytesWritten.sum();
+        long framesIn = framesRead.sum();
+        long framesOut = framesWritten.sum();
+        long encodeTotal = encodeNanos.sum();
+        long encodes = encodeCount.sum();
+        long[] types = new long[messagesByType.length];
+        for (int i = 0; i < types.length; i++) {
+            long count = messagesByType[i].sum();
+            types[i] = count - lastMessagesByType[i];
+            lastMessagesByType[i] = count;
+        }
+
+        MetricsSnapshot snapshot = new MetricsSnapshot(eventLoop.getName(), now, now - lastSnapshotMillis,
+                selects - lastSelects, emptySelects - lastEmptySelects,
+                read - lastBytesRead, written - lastBytesWritten,
+                framesIn - lastFramesRead, framesOut - lastFramesWritten, types,
+                (long) decodeInterval.getMean(), decodeInterval.getValueAtPercentile(99),
+                encodes == lastEncodeCount ? 0 : (encodeTotal - lastEncodeNanos) / (encodes - lastEncodeCount),
+                eventLoop.getConnectionCount(), outboundQueueBytes.sum(), eventLoop.getTaskQueueSize(),
+                lagInterval.getValueAtPercentile(50), lagInterval.getValueAtPercentile(99), lagInterval.getMaxValue());
+
+        lastSnapshotMillis = now;
+        lastSelects = selects;
+        lastEmptySelects = emptySelects;
+        lastBytesRead = read;
+        lastBytesWritten = written;
+        lastFramesRead = framesIn;
+        lastFramesWritten = framesOut;
+        lastEncodeNanos = encodeTotal;
+        lastEncodeCount = encodes;
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    public MetricsSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    // ==================== JMX ====================
+
+    @Override public long getSelectCount() { return selectCount.sum(); }
+    @Override public long getEmptySelectCount() { return emptySelectCount.sum(); }
+    @Override public long getBytesRead() { return bytesRead.sum(); }
+    @Override public long getBytesWritten() { return bytesWritten.sum(); }
+    @Override public long getFramesRead() { return framesRead.sum(); }
+    @Override public long getFramesWritten() { return framesWritten.sum(); }
+    @Override public long getDecodeNanos() { return decodeNanos.sum(); }
+    @Override public long getEncodeNanos() { return encodeNanos.sum(); }
+    @Override public int getOpenConnections() { return eventLoop.getConnectionCount(); }
+    @Override public long getOutboundQueueBytes() { return outboundQueueBytes.sum(); }
+    @Override public int getTaskQueueSize() { return eventLoop.getTaskQueueSize(); }
+    @Override public long getCompressedFrames() { return compressedFrames.sum(); }
+    @Override public long getCompressionBytesSaved() { return compressInputBytes.sum() - compressOutputBytes.sum(); }
+    @Override public long getCompressNanos() { return compressNanos.sum(); }
+    @Override public long getBroadcastDropped() { return broadcastDropped.sum(); }
+    @Override public long getRateLimited() { return rateLimited.sum(); }
+    @Override public long getOverloadRejected() { return overloadRejected.sum(); }
+    @Override public long getOverloadPaused() { return overloadPaused.sum(); }
+    @Override public long getOverloadDisconnects() { return overloadDisconnects.sum(); }
+    @Override public int getOverloadLevel() { return overloadLevel; }
+
+    @Override
+    public long[] getMessagesByType() {
+        long[] counts = new long[messagesByType.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = messagesByType[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.perSecond(snapshot.getMessages());
+    }
+
+    @Override
+    public double getBytesReadPerSecond() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.perSecond(snapshot.getBytesRead());
+    }
+
+    @Override
+    public double getBytesWrittenPerSecond() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.perSecond(snapshot.getBytesWritten());
+    }
+
+    @Override
+    public long getDecodeP99Micros() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.getDecodeP99Nanos() / 1000;
+    }
+
+    @Override
+    public long getLagP99Micros() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.getLagP99Nanos() / 1000;
+    }
+
+    @Override
+    public long getLagMaxMicros() {
+        MetricsSnapshot snapshot = lastSnapshot;
+        return snapshot == null ? 0 : snapshot.getLagMaxNanos() / 1000;
+    }
+}
@@ -0,0 +1,35 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 事件循环指标的JMX视图：累计计数器实时读取，速率和分位数取自最近一次快照
+ */
+public interface EventLoopMetricsMBean {
+    long getSelectCount();
+    long getEmptySelectCount();
+    long getBytesRead();
+    long getBytesWritten();
+    long getFramesRead();
+    long getFramesWritten();
+    long getDecodeNanos();
+    long getEncodeNanos();
+    long[] getMessagesByType();
+    int getOpenConnections();
+    long getOutboundQueueBytes();
+    int getTaskQueueSize();
+    long getCompressedFrames();
+    long getCompressionBytesSaved();
+    long getCompressNanos();
+    long getBroadcastDropped();
+    long getRateLimited();
+    long getOverloadRejected();
+    long getOverloadPaused();
+    long getOverloadDisconnects();
+    int getOverloadLevel();
+
+    double getMessagesPerSecond();
+    double getBytesReadPerSecond();
+    double getBytesWrittenPerSecond();
+    long getDecodeP99Micros();
+    long getLagP99Micros();
+    long getLagMaxMicros();
+}
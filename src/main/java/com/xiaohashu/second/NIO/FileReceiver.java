@@ -0,0 +1,38 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 客户端文件接收目标：收到文件头时（客户端IO线程）决定文件字节写到哪里。
+ * 文件字节从直接内存的接收缓冲区写入返回的通道，不经过堆；通道在接收完成或失败后由客户端关闭。
+ */
+public interface FileReceiver {
+
+    FileChannel open(FileTransferHeader header) throws IOException;
+
+    /**
+     * 按文件头的content作为文件名（只取最后一段，防止路径穿越）保存到目录下，已存在则覆盖
+     */
+    static FileReceiver toDirectory(Path directory) {
+        return header -> FileChannel.open(directory.resolve(fileName(header)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    static String fileName(BusinessMessage header) {
+        String content = header.getContent();
+        try {
+            Path name = content == null || content.isEmpty() ? null : Paths.get(content).getFileName();
+            if (name != null && !".".equals(name.toString()) && !"..".equals(name.toString())) {
+                return name.toString();
+            }
+        } catch (InvalidPathException ignored) {
+            // 非法文件名，使用默认名
+        }
+        return "file-" + header.getMessageId();
+    }
+}
@@ -0,0 +1,83 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 待发送的文件区域：一个文件头帧（{@link KryoProtocolDecoder#FLAG_FILE}）+ 文件中 [position, position+count) 的原始字节。
+ * <p>
+ * 由 {@link NioEventLoop#sendFile} 创建并交给流水线，编码器先写出文件头帧，文件字节由出站队列用
+ * {@link FileChannel#transferTo} 直接发往套接字，不读入堆内存。入队后所有权归出站队列，发送完或连接关闭时关闭文件。
+ */
+public final class FileRegion {
+    private final BusinessMessage header;
+    private final FileChannel file;
+    private final long count;
+    private long position;
+    private long transferred;
+
+    /**
+     * @param header 随文件发送的消息（如文件名），接收端在文件收完后作为 {@link FileTransferHeader} 交给调用方
+     */
+    public FileRegion(BusinessMessage header, FileChannel file, long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("文件区域非法: position=" + position + ", count=" + count);
+        }
+        this.header = header;
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    /**
+     * 打开整个文件作为发送区域
+     */
+    public static FileRegion open(BusinessMessage header, Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new FileRegion(header, file, 0, file.size());
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从当前进度继续发送，非阻塞通道写满时返回已发送的部分
+     *
+     * @throws EOFException 文件在发送过程中被截断
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        long remaining = remaining();
+        if (remaining == 0) {
+            return 0;
+        }
+        long written = file.transferTo(position, remaining, target);
+        if (written == 0 && position >= file.size()) {
+            throw new EOFException("文件已被截断，已发送" + transferred + "/" + count + "字节");
+        }
+        position += written;
+        transferred += written;
+        return written;
+    }
+
+    /**
+     * 关闭文件（在所属事件循环线程调用）
+     */
+    void release() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("关闭文件失败: " + e.getMessage());
+        }
+    }
+
+    public BusinessMessage header() { return header; }
+    public long count() { return count; }
+    public long transferred() { return transferred; }
+    public long remaining() { return count - transferred; }
+}
@@ -0,0 +1,23 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 解码出的文件头：发送端随文件附带的消息 + 紧随其后的文件原始字节数。
+ * 客户端收完文件字节后才把它交给调用方（完成同ID请求的future或交给消息监听器）。
+ */
+public class FileTransferHeader extends BusinessMessage {
+    private final long fileLength;
+
+    public FileTransferHeader(BusinessMessage message, long fileLength) {
+        super(message.getMessageId(), message.getContent(), message.getSendTime(), message.getMessageType());
+        this.fileLength = fileLength;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    @Override
+    public String toString() {
+        return "FileTransferHeader(" + super.toString() + ", fileLength=" + fileLength + ")";
+    }
+}
@@ -0,0 +1,114 @@
+package com.xiaohashu.second.NIO;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 帧压缩上下文（LZ4块压缩）：每个事件循环（客户端每个IO线程）持有一个，只在所属线程使用。
+ * <p>
+ * 压缩帧格式：4字节总长度 + 4字节类型字（置 {@link KryoProtocolDecoder#FLAG_COMPRESSED}）+ 4字节原始消息体长度 + LZ4块。
+ * 类型字的其它位（消息类型、批量标志）保持不变，解压后按原帧解码。
+ * <ul>
+ *     <li>消息体小于阈值的帧不压缩；压缩后没有变小的帧按原样发送</li>
+ *     <li>压缩和解压都直接在池化的直接内存缓冲区之间进行，不经过堆上byte[]</li>
+ * </ul>
+ */
+public final class FrameCompressor {
+    private static final int HEADER_LENGTH = 8;
+    private static final int LENGTH_FIELD = 4; // 原始消息体长度
+    // 优先JNI实现，不可用时退回纯Java实现
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+    // 输入来自网络，只能用按压缩长度限界的安全解压器（fast解压器信任原始长度，损坏数据会越界读）
+    private static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+
+    private final LZ4Compressor compressor = FACTORY.fastCompressor();
+    private final PooledBufferAllocator allocator = PooledBufferAllocator.getInstance();
+    private final int threshold;
+    private final EventLoopMetrics metrics; // 客户端为null
+
+    /**
+     * @param threshold 消息体达到多少字节才压缩，0表示关闭压缩
+     */
+    public FrameCompressor(int threshold, EventLoopMetrics metrics) {
+        this.threshold = threshold;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /**
+     * 压缩一个完整帧（读模式）。压缩成功时释放原帧、返回新帧，否则原样返回
+     */
+    public PooledByteBuffer compress(PooledByteBuffer frame) {
+        ByteBuffer source = frame.buffer();
+        int start = source.position();
+        int bodyLength = source.remaining() - HEADER_LENGTH;
+        int type = source.getInt(start + 4);
+        if (threshold <= 0 || bodyLength < threshold || (type & KryoProtocolDecoder.FLAG_COMPRESSED) != 0) {
+            return frame;
+        }
+        long startNanos = System.nanoTime();
+        int maxLength = HEADER_LENGTH + LENGTH_FIELD + compressor.maxCompressedLength(bodyLength);
+        PooledByteBuffer compressed = allocator.allocate(maxLength);
+        ByteBuffer target = compressed.buffer();
+        int compressedLength = compressor.compress(source, start + HEADER_LENGTH, bodyLength,
+                target, HEADER_LENGTH + LENGTH_FIELD, maxLength - HEADER_LENGTH - LENGTH_FIELD);
+        if (LENGTH_FIELD + compressedLength >= bodyLength) {
+            compressed.release(); // 不可压缩的数据（已压缩的图片等）按原样发送
+            if (metrics != null) {
+                metrics.onCompressed(bodyLength, bodyLength, System.nanoTime() - startNanos);
+            }
+            return frame;
+        }
+        int totalLength = HEADER_LENGTH + LENGTH_FIELD + compressedLength;
+        target.putInt(0, totalLength);
+        target.putInt(4, type | KryoProtocolDecoder.FLAG_COMPRESSED);
+        target.putInt(HEADER_LENGTH, bodyLength);
+        target.position(0).limit(totalLength);
+        frame.release();
+        if (metrics != null) {
+            metrics.onCompressed(bodyLength, LENGTH_FIELD + compressedLength, System.nanoTime() - startNanos);
+        }
+        return compressed;
+    }
+
+    /**
+     * 解压消息体：source的position到limit为 原始长度 + LZ4块，结果写入池化缓冲区（读模式），调用方用完后需release
+     *
+     * @throws IllegalArgumentException 原始长度非法或数据损坏
+     */
+    static PooledByteBuffer decompress(ByteBuffer source) {
+        int start = source.position();
+        int end = source.limit();
+        if (end - start < LENGTH_FIELD) {
+            throw new IllegalArgumentException("压缩帧缺少原始长度");
+        }
+        int originalLength = source.getInt(start);
+        if (originalLength <= 0 || originalLength > KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("压缩帧原始长度非法: " + originalLength);
+        }
+        PooledByteBuffer pooled = PooledBufferAllocator.getInstance().allocate(originalLength);
+        try {
+            int written = DECOMPRESSOR.decompress(source, start + LENGTH_FIELD, end - start - LENGTH_FIELD,
+                    pooled.buffer(), 0, originalLength);
+            if (written != originalLength) {
+                throw new IllegalArgumentException("压缩帧长度不一致: " + written + " / " + originalLength);
+            }
+        } catch (LZ4Exception e) {
+            pooled.release();
+            throw new IllegalArgumentException("压缩帧数据损坏: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            pooled.release();
+            throw e;
+        }
+        ByteBuffer body = pooled.buffer();
+        body.position(0).limit(originalLength);
+        return pooled;
+    }
+}
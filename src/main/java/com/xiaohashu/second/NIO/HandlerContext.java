@@ -0,0 +1,74 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 处理器在某个连接流水线中的上下文：记录前后相邻的入站/出站处理器，负责把消息传递下去
+ */
+public final class HandlerContext {
+    private final ChannelPipeline pipeline;
+    private final String name;
+    private final Object handler;
+    final InboundHandler inboundHandler;   // 非入站处理器为null
+    final OutboundHandler outboundHandler; // 非出站处理器为null
+
+    // 双向链表，流水线增删处理器时维护
+    HandlerContext prev;
+    HandlerContext next;
+    // 预先算好的下一个入站/前一个出站上下文，传递时O(1)跳转；为null表示到达流水线末尾/头部
+    HandlerContext nextInbound;
+    HandlerContext prevOutbound;
+
+    HandlerContext(ChannelPipeline pipeline, String name, Object handler) {
+        this.pipeline = pipeline;
+        this.name = name;
+        this.handler = handler;
+        this.inboundHandler = handler instanceof InboundHandler ? (InboundHandler) handler : null;
+        this.outboundHandler = handler instanceof OutboundHandler ? (OutboundHandler) handler : null;
+    }
+
+    /**
+     * 把入站消息交给下一个入站处理器，没有则进入业务执行阶段
+     */
+    public void fireRead(Object msg) {
+        if (pipeline.isClosed()) {
+            return;
+        }
+        HandlerContext ctx = nextInbound;
+        if (ctx == null) {
+            pipeline.tailRead(msg);
+            return;
+        }
+        try {
+            ctx.inboundHandler.channelRead(ctx, msg);
+        } catch (Exception e) {
+            pipeline.exceptionCaught(ctx, e);
+        }
+    }
+
+    /**
+     * 把出站消息交给前一个出站处理器，没有则写入连接的出站队列
+     */
+    public void write(Object msg) {
+        HandlerContext ctx = prevOutbound;
+        if (ctx == null) {
+            pipeline.headWrite(msg);
+            return;
+        }
+        try {
+            ctx.outboundHandler.write(ctx, msg);
+        } catch (Exception e) {
+            pipeline.exceptionCaught(ctx, e);
+        }
+    }
+
+    /**
+     * 请求发送已写入的消息
+     */
+    public void flush() {
+        pipeline.flush();
+    }
+
+    public String name() { return name; }
+    public Object handler() { return handler; }
+    public ChannelPipeline pipeline() { return pipeline; }
+    public ClientConnection connection() { return pipeline.connection(); }
+}
@@ -0,0 +1,145 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 哈希时间轮：单线程使用（由所属事件循环驱动），定时任务按到期tick散列到环形槽位的双向链表中。
+ * 调度、取消均为O(1)；每次推进只遍历经过的槽位，到期任务按O(到期数)触发。
+ * 任务节点由调用方持有并可反复调度，调度本身不分配对象。
+ */
+public class HashedTimingWheel {
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startTime;
+    private long nextTick; // 下一个待处理的tick
+    private int size;
+
+    public HashedTimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tick间隔必须大于0: " + tickMillis);
+        }
+        if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("时间轮槽位数必须是2的幂: " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startTime = nowMillis;
+    }
+
+    /**
+     * 在指定时间点到期，已在轮中的任务先取消再重新调度
+     */
+    public void schedule(Timeout timeout, long deadlineMillis) {
+        if (timeout.isScheduled()) {
+            cancel(timeout);
+        }
+        long tick = Math.max((deadlineMillis - startTime + tickMillis - 1) / tickMillis, nextTick);
+        int bucket = (int) (tick & mask);
+        timeout.deadlineTick = tick;
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    public void cancel(Timeout timeout) {
+        timeout.pendingExpire = false;
+        if (!timeout.isScheduled()) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * 推进到当前时间，触发所有到期任务（事件循环每轮调用）
+     */
+    public void advance(long nowMillis) {
+        long targetTick = (nowMillis - startTime) / tickMillis;
+        if (targetTick < nextTick || size == 0) {
+            nextTick = Math.max(nextTick, targetTick + 1);
+            return;
+        }
+        // 落后超过一圈时每个槽位只需扫描一次
+        long ticks = Math.min(targetTick - nextTick + 1, buckets.length);
+        Timeout expired = null;
+        for (long i = 0; i < ticks; i++) {
+            Timeout timeout = buckets[(int) ((nextTick + i) & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    cancel(timeout);
+                    timeout.pendingExpire = true;
+                    timeout.nextExpired = expired;
+                    expired = timeout;
+                }
+                timeout = next;
+            }
+        }
+        nextTick = targetTick + 1;
+
+        // 先摘下再统一触发，回调中取消/重新调度其它任务不会破坏遍历
+        while (expired != null) {
+            Timeout timeout = expired;
+            expired = timeout.nextExpired;
+            timeout.nextExpired = null;
+            if (timeout.pendingExpire) {
+                timeout.pendingExpire = false;
+                try {
+                    timeout.expire(nowMillis);
+                } catch (Throwable t) {
+                    System.err.println("定时任务执行异常: " + t);
+                }
+            }
+        }
+    }
+
+    /**
+     * 距下一个tick的毫秒数，供事件循环计算select超时；轮为空时返回-1
+     */
+    public long millisToNextTick(long nowMillis) {
+        if (size == 0) {
+            return -1;
+        }
+        return Math.max(0, startTime + nextTick * tickMillis - nowMillis);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 时间轮任务节点
+     */
+    public abstract static class Timeout {
+        private Timeout prev;
+        private Timeout next;
+        private Timeout nextExpired;
+        private boolean pendingExpire;
+        private long deadlineTick;
+        private int bucket = -1;
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+
+        /**
+         * 到期回调，在事件循环线程执行
+         */
+        protected abstract void expire(long nowMillis);
+    }
+}
@@ -0,0 +1,125 @@
+package com.xiaohashu.second.NIO;
+
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 心跳帧快速编解码：请求/响应帧各预先编码一份模板，发送时整体拷贝后只改写ID和时间戳，
+ * 接收时直接从帧体读出ID和时间戳，全程不创建 BusinessMessage、不经过Kryo。
+ * 服务端拒绝请求时的繁忙应答帧（{@link #BUSY_TYPE}）同样用模板编码，过载时回复它不占用编码器。
+ * <p>
+ * 帧体格式与 {@link BusinessMessageSerializer} 一致。模板中的ID和时间戳使用定长9字节的varlong
+ * （前8字节都带续位标志），标准varlong解码器同样能读出，因此可以原地改写任意值。
+ */
+public final class HeartbeatCodec {
+    public static final int HEARTBEAT_TYPE = 1;
+    // 保留类型：服务端繁忙应答，messageId为被拒绝的请求ID（1字节varint能表示的最大值，避开业务常用的小编号）
+    public static final int BUSY_TYPE = 127;
+    private static final int HEADER_LENGTH = 8;
+    private static final int FIXED_VARLONG_LENGTH = 9;
+    private static final int ID_OFFSET = HEADER_LENGTH;
+    // messageId之后是1字节的messageType varint
+    private static final int SEND_TIME_OFFSET = ID_OFFSET + FIXED_VARLONG_LENGTH + 1;
+
+    private static final byte[] REQUEST_TEMPLATE = template(HEARTBEAT_TYPE, "心跳请求");
+    private static final byte[] RESPONSE_TEMPLATE = template(HEARTBEAT_TYPE, "心跳响应");
+    private static final byte[] BUSY_TEMPLATE = template(BUSY_TYPE, "服务繁忙");
+
+    private HeartbeatCodec() {
+    }
+
+    private static byte[] template(int messageType, String content) {
+        Output output = new Output(64, -1);
+        output.setPosition(SEND_TIME_OFFSET + FIXED_VARLONG_LENGTH);
+        output.writeString(content);
+        byte[] bytes = output.toBytes();
+        ByteBuffer frame = ByteBuffer.wrap(bytes);
+        frame.putInt(0, bytes.length);
+        frame.putInt(4, messageType);
+        putFixedVarLong(frame, ID_OFFSET, 0);
+        frame.put(ID_OFFSET + FIXED_VARLONG_LENGTH, (byte) messageType);
+        putFixedVarLong(frame, SEND_TIME_OFFSET, 0);
+        return bytes;
+    }
+
+    /**
+     * 心跳帧长度（请求和响应相同），分配缓冲区时使用
+     */
+    public static int frameLength() {
+        return RESPONSE_TEMPLATE.length;
+    }
+
+    public static int busyFrameLength() {
+        return BUSY_TEMPLATE.length;
+    }
+
+    public static void encodeRequest(ByteBuffer target, long messageId, long sendTime) {
+        encode(target, REQUEST_TEMPLATE, messageId, sendTime);
+    }
+
+    public static void encodeResponse(ByteBuffer target, long messageId, long sendTime) {
+        encode(target, RESPONSE_TEMPLATE, messageId, sendTime);
+    }
+
+    /**
+     * 繁忙应答：告诉客户端ID为messageId的请求未被处理
+     */
+    public static void encodeBusy(ByteBuffer target, long messageId, long sendTime) {
+        encode(target, BUSY_TEMPLATE, messageId, sendTime);
+    }
+
+    /**
+     * 在目标缓冲区（写模式）的position处写入一帧模板并推进position
+     */
+    private static void encode(ByteBuffer target, byte[] template, long messageId, long sendTime) {
+        int start = target.position();
+        target.put(template);
+        putFixedVarLong(target, start + ID_OFFSET, messageId);
+        putFixedVarLong(target, start + SEND_TIME_OFFSET, sendTime);
+    }
+
+    /**
+     * 从心跳帧体起始位置读messageId（帧体第一个字段）
+     */
+    public static long readMessageId(ByteBuffer buffer, int bodyStart) {
+        return readVarLong(buffer, bodyStart);
+    }
+
+    /**
+     * 从心跳帧体起始位置读sendTime（跳过messageId和messageType）
+     */
+    public static long readSendTime(ByteBuffer buffer, int bodyStart) {
+        int index = skipVarInt(buffer, skipVarInt(buffer, bodyStart));
+        return readVarLong(buffer, index);
+    }
+
+    private static void putFixedVarLong(ByteBuffer buffer, int index, long value) {
+        for (int i = 0; i < FIXED_VARLONG_LENGTH - 1; i++) {
+            buffer.put(index + i, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(index + FIXED_VARLONG_LENGTH - 1, (byte) value); // 第9字节承载剩余8位
+    }
+
+    private static long readVarLong(ByteBuffer buffer, int index) {
+        long result = 0;
+        for (int shift = 0; shift < 56; shift += 7) {
+            byte b = buffer.get(index++);
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        return result | (long) (buffer.get(index) & 0xFF) << 56;
+    }
+
+    private static int skipVarInt(ByteBuffer buffer, int index) {
+        for (int i = 0; i < FIXED_VARLONG_LENGTH; i++) {
+            if ((buffer.get(index++) & 0x80) == 0) {
+                break;
+            }
+        }
+        return index;
+    }
+}
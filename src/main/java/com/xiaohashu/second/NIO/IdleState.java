@@ -0,0 +1,20 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 连接空闲类型
+ */
+public enum IdleState {
+    READER_IDLE("读空闲"),
+    WRITER_IDLE("写空闲"),
+    ALL_IDLE("读写都空闲");
+
+    private final String desc;
+
+    IdleState(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
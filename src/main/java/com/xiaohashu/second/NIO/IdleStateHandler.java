@@ -0,0 +1,9 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 连接空闲回调，在所属事件循环线程执行
+ */
+public interface IdleStateHandler {
+
+    void onIdle(ClientConnection connection, IdleState state);
+}
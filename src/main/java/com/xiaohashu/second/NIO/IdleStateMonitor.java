@@ -0,0 +1,96 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 事件循环的空闲连接检测：每个连接每种启用的空闲类型一个时间轮节点。
+ * 读写活动只更新连接上的时间戳（O(1)），节点到期时再根据时间戳判断：
+ * 确实空闲则回调并按完整超时重新调度，否则按剩余时间重新调度。
+ */
+public class IdleStateMonitor {
+    private final HashedTimingWheel timingWheel;
+    private final IdleStateHandler handler;
+    private final long readerIdleMillis;
+    private final long writerIdleMillis;
+    private final long allIdleMillis;
+
+    public IdleStateMonitor(HashedTimingWheel timingWheel, NioServerConfig config) {
+        this.timingWheel = timingWheel;
+        this.handler = config.getIdleStateHandler();
+        this.readerIdleMillis = config.getReaderIdleMillis();
+        this.writerIdleMillis = config.getWriterIdleMillis();
+        this.allIdleMillis = config.getAllIdleMillis();
+    }
+
+    /**
+     * 新连接注册后开始检测
+     */
+    public void register(ClientConnection connection, long nowMillis) {
+        int count = (readerIdleMillis > 0 ? 1 : 0) + (writerIdleMillis > 0 ? 1 : 0) + (allIdleMillis > 0 ? 1 : 0);
+        if (count == 0) {
+            return;
+        }
+        IdleTimeout[] timeouts = new IdleTimeout[count];
+        int i = 0;
+        if (readerIdleMillis > 0) {
+            timeouts[i++] = new IdleTimeout(connection, IdleState.READER_IDLE, readerIdleMillis);
+        }
+        if (writerIdleMillis > 0) {
+            timeouts[i++] = new IdleTimeout(connection, IdleState.WRITER_IDLE, writerIdleMillis);
+        }
+        if (allIdleMillis > 0) {
+            timeouts[i] = new IdleTimeout(connection, IdleState.ALL_IDLE, allIdleMillis);
+        }
+        for (IdleTimeout timeout : timeouts) {
+            timingWheel.schedule(timeout, nowMillis + timeout.timeoutMillis);
+        }
+        connection.setIdleTimeouts(timeouts);
+    }
+
+    /**
+     * 连接关闭时取消检测
+     */
+    public void unregister(ClientConnection connection) {
+        HashedTimingWheel.Timeout[] timeouts = connection.getIdleTimeouts();
+        if (timeouts == null) {
+            return;
+        }
+        for (HashedTimingWheel.Timeout timeout : timeouts) {
+            timingWheel.cancel(timeout);
+        }
+        connection.setIdleTimeouts(null);
+    }
+
+    private final class IdleTimeout extends HashedTimingWheel.Timeout {
+        private final ClientConnection connection;
+        private final IdleState state;
+        private final long timeoutMillis;
+
+        IdleTimeout(ClientConnection connection, IdleState state, long timeoutMillis) {
+            this.connection = connection;
+            this.state = state;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        protected void expire(long nowMillis) {
+            long lastActive;
+            switch (state) {
+                case READER_IDLE:
+                    lastActive = connection.getLastReadTime();
+                    break;
+                case WRITER_IDLE:
+                    lastActive = connection.getLastWriteTime();
+                    break;
+                default:
+                    lastActive = connection.getLastActiveTime();
+            }
+            long remaining = lastActive + timeoutMillis - nowMillis;
+            if (remaining > 0) {
+                // 期间有活动，按剩余时间重新检测
+                timingWheel.schedule(this, nowMillis + remaining);
+                return;
+            }
+            timingWheel.schedule(this, nowMillis + timeoutMillis);
+            handler.onIdle(connection, state); // 回调可能关闭连接并取消本节点
+        }
+    }
+}
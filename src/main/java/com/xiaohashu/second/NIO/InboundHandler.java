@@ -0,0 +1,11 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 入站处理器：读到的数据从流水线头部依次经过各入站处理器，
+ * 处理器通过 {@link HandlerContext#fireRead(Object)} 把结果传给下一个，末尾交给业务执行阶段。
+ * 在所属事件循环线程调用。
+ */
+public interface InboundHandler {
+
+    void channelRead(HandlerContext ctx, Object msg) throws Exception;
+}
@@ -0,0 +1,22 @@
+package com.xiaohashu.second.NIO;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 默认入站处理器：长度前缀帧拆包 + Kryo反序列化，每解出一条消息直接传给下一个处理器
+ */
+@Sharable
+public final class KryoDecoderHandler implements InboundHandler {
+    public static final KryoDecoderHandler INSTANCE = new KryoDecoderHandler();
+
+    private final KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+
+    @Override
+    public void channelRead(HandlerContext ctx, Object msg) {
+        if (msg instanceof ByteBuffer) {
+            decoder.decode((ByteBuffer) msg, ctx);
+        } else {
+            ctx.fireRead(msg);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 默认出站处理器：把 {@link BusinessMessage} 编码为长度前缀Kryo帧（池化缓冲区），
+ * 消息体超过压缩阈值时用所属事件循环的 {@link FrameCompressor} 压缩；
+ * {@link FileRegion} 编码为文件头帧，文件区域本身原样传给出站队列
+ */
+@Sharable
+public final class KryoEncoderHandler implements OutboundHandler {
+    public static final KryoEncoderHandler INSTANCE = new KryoEncoderHandler();
+
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+
+    @Override
+    public void write(HandlerContext ctx, Object msg) {
+        if (msg instanceof BusinessMessage) {
+            long startNanos = System.nanoTime();
+            NioEventLoop eventLoop = ctx.connection().getEventLoop();
+            PooledByteBuffer frame = encoder.encode((BusinessMessage) msg);
+            eventLoop.getMetrics().onEncoded(System.nanoTime() - startNanos);
+            ctx.write(eventLoop.getCompressor().compress(frame));
+        } else if (msg instanceof FileRegion) {
+            FileRegion region = (FileRegion) msg;
+            ctx.write(encoder.encodeFileHeader(region.header(), region.count()));
+            ctx.write(region);
+        } else {
+            ctx.write(msg);
+        }
+    }
+}
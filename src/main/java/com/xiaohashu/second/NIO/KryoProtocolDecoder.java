@@ -4,18 +4,62 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Kryo协议解码器。帧格式：4字节总长度 + 4字节类型字 + 消息体。
+ * 类型字低24位为消息类型，高位为标志位：
+ * <ul>
+ *     <li>{@link #FLAG_BATCH}：批量帧，消息体为 count(varint) + count个消息体，一次Kryo会话连续读出</li>
+ *     <li>{@link #FLAG_COMPRESSED}：消息体经LZ4压缩，格式见 {@link FrameCompressor}，先解压到池化缓冲区再按其它标志解码</li>
+ *     <li>{@link #FLAG_FILE}：文件头帧，消息体为 消息 + 8字节文件长度，帧后紧跟该长度的文件原始字节。
+ *     列表模式解出 {@link FileTransferHeader} 后停止解码，剩余字节由调用方按文件数据处理；服务端不接收文件</li>
+ *     <li>{@link #FLAG_STREAM}：流分块帧，消息体为 1字节分块种类 + 8字节流ID + 数据，见 {@link StreamChunk}。
+ *     大消息拆成有界的分块帧，与其它帧交错传输；流水线模式解出 {@link StreamChunk} 传给下一个处理器，客户端不接收流</li>
+ * </ul>
+ */
 public class KryoProtocolDecoder {
     private static final int HEADER_LENGTH = 8; // 4字节总长度 + 4字节消息类型
-    private static final int MAX_MESSAGE_LENGTH = 1024 * 1024; // 最大1MB
+    static final int MAX_MESSAGE_LENGTH = 1024 * 1024; // 最大1MB
+    static final int TYPE_MASK = 0x00FFFFFF;
+    static final int FLAG_BATCH = 1 << 30;
+    static final int FLAG_COMPRESSED = 1 << 29;
+    static final int FLAG_FILE = 1 << 28;
+    static final int FLAG_STREAM = 1 << 27;
+    static final int STREAM_HEADER_LENGTH = HEADER_LENGTH + 1 + 8; // 帧头 + 分块种类 + 流ID
     private final KryoSerializer kryoSerializer = KryoSerializer.getInstance();
+    private final HeartbeatListener heartbeatListener;
+
+    public KryoProtocolDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param heartbeatListener 非流水线（客户端）版本的心跳快速通道，为null时心跳帧按普通消息解码
+     */
+    public KryoProtocolDecoder(HeartbeatListener heartbeatListener) {
+        this.heartbeatListener = heartbeatListener;
+    }
 
     public List<BusinessMessage> decode(ByteBuffer buffer) {
         List<BusinessMessage> messages = new ArrayList<>();
+        decode(buffer, null, messages);
+        return messages;
+    }
+
+    /**
+     * 流水线版本：每解出一条消息直接传给下一个处理器，不生成中间List
+     */
+    public void decode(ByteBuffer buffer, HandlerContext ctx) {
+        decode(buffer, ctx, null);
+    }
+
+    private void decode(ByteBuffer buffer, HandlerContext ctx, List<BusinessMessage> messages) {
+        EventLoopMetrics metrics = ctx == null ? null : ctx.connection().getEventLoop().getMetrics();
         // 关键修复1：先将缓冲区切换为读模式，确保读取的是有效数据
         buffer.flip();
 
         // 循环解析前，先校验缓冲区剩余字节是否至少包含完整的协议头
         while (buffer.remaining() >= HEADER_LENGTH) {
+            long startNanos = metrics == null ? 0 : System.nanoTime();
             buffer.mark(); // 标记当前位置，解析失败时回滚
             int totalLength = buffer.getInt(); // 读取总长度
 
@@ -35,45 +79,171 @@ public class KryoProtocolDecoder {
 
             // 解析协议头和消息体
             int messageType = buffer.getInt(); // 读取4字节消息类型
-            int bodyLength = totalLength - HEADER_LENGTH;
-            byte[] bodyBytes = new byte[bodyLength];
-            buffer.get(bodyBytes); // 读取消息体
+            int frameEnd = buffer.position() + totalLength - HEADER_LENGTH;
+            int limit = buffer.limit();
+
+            // 心跳快速通道：按帧头类型识别，直接读ID和时间戳，不反序列化
+            if (messageType == HeartbeatCodec.HEARTBEAT_TYPE && frameEnd > buffer.position()
+                    && handleHeartbeat(buffer, ctx, frameEnd)) {
+                buffer.position(frameEnd);
+                if (metrics != null) {
+                    metrics.onFrameDecoded(messageType, System.nanoTime() - startNanos);
+                }
+                continue;
+            }
+
+            if ((messageType & FLAG_FILE) != 0 && ctx != null) {
+                // 帧后的文件字节无法按帧解析：丢弃剩余数据，关闭连接
+                System.err.println("服务端不接收文件传输帧，关闭连接");
+                ClientConnection connection = ctx.connection();
+                NioEventLoop eventLoop = connection.getEventLoop();
+                eventLoop.execute(() -> eventLoop.closeConnection(connection));
+                buffer.position(limit);
+                break;
+            }
+
+            if ((messageType & FLAG_STREAM) != 0 && ctx == null) {
+                System.err.println("客户端不接收流分块帧，已跳过");
+                buffer.position(frameEnd);
+                continue;
+            }
 
-            // Kryo反序列化
+            // Kryo直接从接收缓冲区读取本帧消息体（limit限定在帧尾），不拷贝出中间byte[]
+            buffer.limit(frameEnd);
+            BusinessMessage message = null;
+            List<BusinessMessage> batch = null;
+            StreamChunk chunk = null;
+            PooledByteBuffer inflated = null;
             try {
-                BusinessMessage message = kryoSerializer.deserialize(bodyBytes, BusinessMessage.class);
-                message.setMessageType(messageType);
-                messages.add(message);
+                ByteBuffer body = buffer;
+                if ((messageType & FLAG_COMPRESSED) != 0) {
+                    inflated = FrameCompressor.decompress(buffer);
+                    body = inflated.buffer();
+                }
+                if ((messageType & FLAG_STREAM) != 0) {
+                    chunk = decodeStreamChunk(body, messageType & TYPE_MASK);
+                } else if ((messageType & FLAG_FILE) != 0) {
+                    int bodyEnd = body.limit() - 8;
+                    long fileLength = body.getLong(bodyEnd);
+                    if (fileLength < 0) {
+                        throw new IllegalArgumentException("文件长度非法: " + fileLength);
+                    }
+                    body.limit(bodyEnd);
+                    message = new FileTransferHeader(kryoSerializer.deserialize(body, BusinessMessage.class), fileLength);
+                    message.setMessageType(messageType & TYPE_MASK);
+                } else if ((messageType & FLAG_BATCH) != 0) {
+                    // 批量帧：列表模式直接追加到结果，流水线模式解完整帧后再逐条传递
+                    batch = messages != null ? messages : new ArrayList<>();
+                    kryoSerializer.deserializeBatch(body, BusinessMessage.class, batch);
+                } else {
+                    message = kryoSerializer.deserialize(body, BusinessMessage.class);
+                    message.setMessageType(messageType & TYPE_MASK);
+                }
             } catch (Exception e) {
                 System.err.println("Kryo反序列化失败: " + e.getMessage());
+                continue;
+            } finally {
+                if (inflated != null && chunk == null) {
+                    inflated.release();
+                }
+                buffer.limit(limit);
+                buffer.position(frameEnd); // 无论Kryo读了多少，都跳到下一帧开头
+            }
+            if (chunk != null) {
+                // 分块数据是接收缓冲区（或解压缓冲区）的切片，下一个处理器同步消费完才释放解压缓冲区；
+                // 在反序列化的try之外传递，处理器异常交给流水线处理，不会被当成解码失败吞掉
+                try {
+                    if (metrics != null) {
+                        metrics.onFrameDecoded(chunk.getMessageType(), System.nanoTime() - startNanos);
+                    }
+                    ctx.fireRead(chunk);
+                } finally {
+                    if (inflated != null) {
+                        inflated.release();
+                    }
+                }
+                continue;
+            }
+            if (ctx == null) {
+                if (message != null) {
+                    messages.add(message);
+                }
+                if (message instanceof FileTransferHeader) {
+                    break; // 之后是文件字节
+                }
+            } else if (message != null) {
+                if (metrics != null) {
+                    metrics.onFrameDecoded(message.getMessageType(), System.nanoTime() - startNanos);
+                }
+                ctx.fireRead(message);
+            } else {
+                long perMessageNanos = metrics == null || batch.isEmpty() ? 0 : (System.nanoTime() - startNanos) / batch.size();
+                for (int i = 0; i < batch.size(); i++) {
+                    BusinessMessage batched = batch.get(i);
+                    if (metrics != null) {
+                        metrics.onFrameDecoded(batched.getMessageType(), perMessageNanos);
+                    }
+                    ctx.fireRead(batched);
+                }
             }
         }
 
         // 关键修复3：压缩缓冲区时，先判断是否有未解析的剩余数据
         buffer.compact(); // 保留未解析的数据，压缩到缓冲区头部
-        return messages;
     }
-}
-
-/**
- * Kryo协议编码器：长度前缀+Kryo序列化
- */
-class KryoProtocolEncoder {
-    private static final int HEADER_LENGTH = 8;
-    private final KryoSerializer kryoSerializer = KryoSerializer.getInstance();
 
-    public ByteBuffer encode(BusinessMessage message) {
-        // Kryo序列化消息体
-        byte[] bodyBytes = kryoSerializer.serialize(message);
-        int totalLength = HEADER_LENGTH + bodyBytes.length;
+    private StreamChunk decodeStreamChunk(ByteBuffer body, int messageType) {
+        byte kind = body.get();
+        long streamId = body.getLong();
+        BusinessMessage header = null;
+        if (kind == StreamChunk.START) {
+            header = kryoSerializer.deserialize(body, BusinessMessage.class);
+            header.setMessageType(messageType);
+        } else if (kind != StreamChunk.DATA && kind != StreamChunk.END && kind != StreamChunk.ABORT) {
+            throw new IllegalArgumentException("未知的流分块种类: " + kind);
+        }
+        return new StreamChunk(streamId, kind, messageType, header, body.slice());
+    }
 
-        // 拼接协议头
-        ByteBuffer buffer = ByteBuffer.allocate(totalLength);
-        buffer.putInt(totalLength); // 总长度
-        buffer.putInt(message.getMessageType()); // 消息类型
-        buffer.put(bodyBytes); // 消息体
-        buffer.flip(); // 切换为读模式
+    /**
+     * 服务端：用预编码的响应模板直接回心跳；客户端：交给心跳监听器
+     *
+     * @return 是否已处理；false时该帧按普通消息解码
+     */
+    private boolean handleHeartbeat(ByteBuffer buffer, HandlerContext ctx, int frameEnd) {
+        int bodyStart = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(frameEnd); // 帧体不完整时绝对读取越界，交给Kryo路径报错
+        try {
+            if (ctx != null) {
+                NioEventLoop eventLoop = ctx.connection().getEventLoop();
+                if (!eventLoop.getConfig().isHeartbeatFastPath()) {
+                    return false;
+                }
+                long messageId = HeartbeatCodec.readMessageId(buffer, bodyStart);
+                PooledByteBuffer response = PooledBufferAllocator.getInstance().allocate(HeartbeatCodec.frameLength());
+                HeartbeatCodec.encodeResponse(response.buffer(), messageId, eventLoop.currentTimeMillis());
+                response.buffer().flip();
+                ctx.write(response);
+                ctx.flush();
+                return true;
+            }
+            return heartbeatListener != null && heartbeatListener.onHeartbeat(
+                    HeartbeatCodec.readMessageId(buffer, bodyStart), HeartbeatCodec.readSendTime(buffer, bodyStart));
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        } finally {
+            buffer.limit(limit);
+        }
+    }
 
-        return buffer;
+    /**
+     * 心跳帧回调（在解码线程执行）
+     */
+    public interface HeartbeatListener {
+        /**
+         * @return 是否已处理；返回false时该帧按普通消息完整解码
+         */
+        boolean onHeartbeat(long messageId, long sendTime);
     }
-}
\ No newline at end of file
+}
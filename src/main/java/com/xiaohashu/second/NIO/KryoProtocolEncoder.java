@@ -0,0 +1,210 @@
+package com.xiaohashu.second.NIO;
+
+import com.esotericsoftware.kryo.io.KryoBufferOverflowException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Kryo协议编码器：长度前缀+Kryo序列化
+ */
+class KryoProtocolEncoder {
+    private static final int HEADER_LENGTH = 8;
+    private static final int INITIAL_FRAME_SIZE = 256;
+    private final KryoSerializer kryoSerializer = KryoSerializer.getInstance();
+
+    private final PooledBufferAllocator allocator = PooledBufferAllocator.getInstance();
+
+    /**
+     * 直接编码到目标缓冲区（写模式）：先预留8字节协议头，消息体写完后回填总长度和类型
+     *
+     * @return 是否写入成功；剩余空间不足时返回false，目标缓冲区position不变
+     */
+    public boolean encode(BusinessMessage message, ByteBuffer target) {
+        int start = target.position();
+        if (target.capacity() - start < HEADER_LENGTH) {
+            return false;
+        }
+        target.position(start + HEADER_LENGTH); // 预留协议头
+        try {
+            int bodyLength = kryoSerializer.serialize(message, target);
+            target.putInt(start, HEADER_LENGTH + bodyLength); // 总长度
+            target.putInt(start + 4, message.getMessageType()); // 消息类型
+            return true;
+        } catch (KryoBufferOverflowException e) {
+            target.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * 把多条消息编码为一个批量帧（写模式），各消息的类型保存在各自的消息体中
+     *
+     * @return 是否写入成功；剩余空间不足时返回false，目标缓冲区position不变
+     */
+    public boolean encodeBatch(List<BusinessMessage> messages, ByteBuffer target) {
+        int start = target.position();
+        if (target.capacity() - start < HEADER_LENGTH) {
+            return false;
+        }
+        target.position(start + HEADER_LENGTH);
+        try {
+            int bodyLength = kryoSerializer.serializeBatch(messages, target);
+            target.putInt(start, HEADER_LENGTH + bodyLength);
+            target.putInt(start + 4, KryoProtocolDecoder.FLAG_BATCH);
+            return true;
+        } catch (KryoBufferOverflowException e) {
+            target.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * 编码文件头帧（写模式）：消息 + 8字节文件长度，帧后由调用方紧跟发送文件字节
+     *
+     * @return 是否写入成功；剩余空间不足时返回false，目标缓冲区position不变
+     */
+    public boolean encodeFileHeader(BusinessMessage header, long fileLength, ByteBuffer target) {
+        int start = target.position();
+        if (target.capacity() - start < HEADER_LENGTH) {
+            return false;
+        }
+        target.position(start + HEADER_LENGTH);
+        try {
+            int bodyLength = kryoSerializer.serialize(header, target);
+            if (target.remaining() < 8) {
+                target.position(start);
+                return false;
+            }
+            target.putLong(fileLength);
+            target.putInt(start, HEADER_LENGTH + bodyLength + 8);
+            target.putInt(start + 4, (header.getMessageType() & KryoProtocolDecoder.TYPE_MASK) | KryoProtocolDecoder.FLAG_FILE);
+            return true;
+        } catch (KryoBufferOverflowException e) {
+            target.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * 编码流的开始分块（写模式）：分块头 + 描述本流的消息，流ID取消息ID
+     *
+     * @return 是否写入成功；剩余空间不足时返回false，目标缓冲区position不变
+     */
+    public boolean encodeStreamStart(BusinessMessage header, ByteBuffer target) {
+        int start = target.position();
+        if (target.capacity() - start < KryoProtocolDecoder.STREAM_HEADER_LENGTH) {
+            return false;
+        }
+        target.position(start + KryoProtocolDecoder.STREAM_HEADER_LENGTH);
+        try {
+            kryoSerializer.serialize(header, target);
+            finishStreamChunk(target, start, header.getMessageType(), header.getMessageId(), StreamChunk.START);
+            return true;
+        } catch (KryoBufferOverflowException e) {
+            target.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * 回填分块帧头：调用方已从 start + STREAM_HEADER_LENGTH 起写入数据，帧尾为当前position
+     */
+    static void finishStreamChunk(ByteBuffer target, int start, int messageType, long streamId, byte kind) {
+        target.putInt(start, target.position() - start);
+        target.putInt(start + 4, (messageType & KryoProtocolDecoder.TYPE_MASK) | KryoProtocolDecoder.FLAG_STREAM);
+        target.put(start + HEADER_LENGTH, kind);
+        target.putLong(start + HEADER_LENGTH + 1, streamId);
+    }
+
+    /**
+     * 流的开始分块编码到池化缓冲区（读模式），调用方用完后需release
+     */
+    public PooledByteBuffer encodeStreamStart(BusinessMessage header) {
+        int capacity = INITIAL_FRAME_SIZE;
+        for (;;) {
+            PooledByteBuffer pooled = allocator.allocate(capacity);
+            ByteBuffer buffer = pooled.buffer();
+            if (encodeStreamStart(header, buffer)) {
+                buffer.flip();
+                return pooled;
+            }
+            capacity = nextCapacity(pooled);
+        }
+    }
+
+    /**
+     * 释放放不下本帧的缓冲区，返回下一次重试的容量。解码端不接受超过
+     * {@link KryoProtocolDecoder#MAX_MESSAGE_LENGTH} 的帧（会错位解析后续数据），最大规格也放不下时抛出，大数据应使用分块流
+     *
+     * @throws IllegalArgumentException 帧超过最大帧长
+     */
+    private static int nextCapacity(PooledByteBuffer tooSmall) {
+        int capacity = tooSmall.capacity();
+        tooSmall.release();
+        if (capacity >= KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("帧超过最大长度 " + KryoProtocolDecoder.MAX_MESSAGE_LENGTH + " 字节，请使用分块流发送");
+        }
+        return Math.min(capacity << 1, KryoProtocolDecoder.MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * 不带数据的分块（结束/中止）编码到池化缓冲区（读模式）
+     */
+    public PooledByteBuffer encodeStreamControl(int messageType, long streamId, byte kind) {
+        PooledByteBuffer pooled = allocator.allocate(KryoProtocolDecoder.STREAM_HEADER_LENGTH);
+        ByteBuffer buffer = pooled.buffer();
+        buffer.position(KryoProtocolDecoder.STREAM_HEADER_LENGTH);
+        finishStreamChunk(buffer, 0, messageType, streamId, kind);
+        buffer.flip();
+        return pooled;
+    }
+
+    /**
+     * 文件头帧编码到池化缓冲区（读模式），调用方用完后需release
+     */
+    public PooledByteBuffer encodeFileHeader(BusinessMessage header, long fileLength) {
+        int capacity = INITIAL_FRAME_SIZE;
+        for (;;) {
+            PooledByteBuffer pooled = allocator.allocate(capacity);
+            ByteBuffer buffer = pooled.buffer();
+            if (encodeFileHeader(header, fileLength, buffer)) {
+                buffer.flip();
+                return pooled;
+            }
+            capacity = nextCapacity(pooled);
+        }
+    }
+
+    /**
+     * 批量帧编码到池化缓冲区（读模式），调用方用完后需release
+     */
+    public PooledByteBuffer encodeBatch(List<BusinessMessage> messages) {
+        int capacity = INITIAL_FRAME_SIZE;
+        for (;;) {
+            PooledByteBuffer pooled = allocator.allocate(capacity);
+            ByteBuffer buffer = pooled.buffer();
+            if (encodeBatch(messages, buffer)) {
+                buffer.flip();
+                return pooled;
+            }
+            capacity = nextCapacity(pooled);
+        }
+    }
+
+    /**
+     * 编码到池化缓冲区（读模式），调用方用完后需release
+     */
+    public PooledByteBuffer encode(BusinessMessage message) {
+        int capacity = INITIAL_FRAME_SIZE;
+        for (;;) {
+            PooledByteBuffer pooled = allocator.allocate(capacity);
+            ByteBuffer buffer = pooled.buffer();
+            if (encode(message, buffer)) {
+                buffer.flip(); // 切换为读模式
+                return pooled;
+            }
+            capacity = nextCapacity(pooled); // 空间不足，换更大的规格重试
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package com.xiaohashu.second.NIO;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.KryoBufferOverflowException;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoPool;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 public class KryoSerializer {
     private static volatile KryoSerializer instance;
     private final KryoPool kryoPool;
+    // 事件循环线程独占的Kryo及复用的Input/Output，缓冲区版本的API走这里，不经过池的borrow/release
+    private final ThreadLocal<KryoContext> threadContext = ThreadLocal.withInitial(KryoContext::new);
 
     private KryoSerializer() {
         // 基于枚举注册Kryo序列化类
@@ -73,4 +80,133 @@ public class KryoSerializer {
             kryoPool.release(kryo);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 序列化：直接写入调用方缓冲区的 position 处（最多写到capacity），并推进position。
+     * 以下缓冲区/Input/Output版本用于协议帧：帧头已确定消息类，注册了手写序列化器的类不写类ID。
+     *
+     * @return 写入的字节数
+     * @throws KryoBufferOverflowException 剩余空间不足，缓冲区position保持不变，调用方可扩容后重试
+     */
+    public int serialize(Object obj, ByteBuffer buffer) {
+        if (obj == null) {
+            throw new IllegalArgumentException("序列化对象不能为空");
+        }
+        KryoContext context = threadContext.get();
+        ByteBufferOutput output = context.output;
+        int start = buffer.position();
+        output.setBuffer(buffer, buffer.capacity());
+        try {
+            write(context.kryo, output, obj);
+        } catch (KryoBufferOverflowException e) {
+            buffer.position(start);
+            throw e;
+        }
+        buffer.position(output.position());
+        return output.position() - start;
+    }
+
+    /**
+     * 批量序列化：count(varint) + 各对象，一次Kryo会话写入缓冲区，溢出语义同 {@link #serialize(Object, ByteBuffer)}
+     *
+     * @return 写入的字节数
+     */
+    public int serializeBatch(List<?> objects, ByteBuffer buffer) {
+        KryoContext context = threadContext.get();
+        ByteBufferOutput output = context.output;
+        int start = buffer.position();
+        output.setBuffer(buffer, buffer.capacity());
+        try {
+            output.writeVarInt(objects.size(), true);
+            for (int i = 0; i < objects.size(); i++) {
+                write(context.kryo, output, objects.get(i));
+            }
+        } catch (KryoBufferOverflowException e) {
+            buffer.position(start);
+            throw e;
+        }
+        buffer.position(output.position());
+        return output.position() - start;
+    }
+
+    /**
+     * 批量反序列化：读出count个对象追加到out
+     *
+     * @return 读出的对象个数
+     */
+    public <T> int deserializeBatch(ByteBuffer buffer, Class<T> clazz, List<? super T> out) {
+        KryoContext context = threadContext.get();
+        context.input.setBuffer(buffer);
+        int count = context.input.readVarInt(true);
+        for (int i = 0; i < count; i++) {
+            out.add(read(context.kryo, context.input, clazz));
+        }
+        return count;
+    }
+
+    /**
+     * 序列化到调用方复用的Output
+     */
+    public void serialize(Object obj, Output output) {
+        if (obj == null) {
+            throw new IllegalArgumentException("序列化对象不能为空");
+        }
+        write(threadContext.get().kryo, output, obj);
+    }
+
+    /**
+     * 反序列化：直接读取缓冲区 position 到 limit 之间的字节，不拷贝
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(ByteBuffer buffer, Class<T> clazz) {
+        if (buffer == null || !buffer.hasRemaining()) {
+            throw new IllegalArgumentException("反序列化缓冲区不能为空");
+        }
+        KryoContext context = threadContext.get();
+        try {
+            context.input.setBuffer(buffer);
+            return read(context.kryo, context.input, clazz);
+        } catch (Exception e) {
+            throw new RuntimeException("Kryo反序列化失败", e);
+        }
+    }
+
+    /**
+     * 从调用方复用的Input反序列化
+     */
+    public <T> T deserialize(Input input, Class<T> clazz) {
+        return read(threadContext.get().kryo, input, clazz);
+    }
+
+    /**
+     * 固定schema的类直接按注册的序列化器写，跳过类ID；其它类仍写类ID
+     */
+    private static void write(Kryo kryo, Output output, Object obj) {
+        if (NioConstant.isFixedSchema(obj.getClass())) {
+            kryo.writeObject(output, obj);
+        } else {
+            kryo.writeClassAndObject(output, obj);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T read(Kryo kryo, Input input, Class<T> clazz) {
+        if (NioConstant.isFixedSchema(clazz)) {
+            return kryo.readObject(input, clazz);
+        }
+        return (T) kryo.readClassAndObject(input);
+    }
+
+    /**
+     * 每线程一份的Kryo及其复用的Input/Output（Input/Output只是调用方缓冲区的视图）
+     */
+    private static final class KryoContext {
+        private final Kryo kryo = new Kryo();
+        private final ByteBufferInput input = new ByteBufferInput();
+        private final ByteBufferOutput output = new ByteBufferOutput();
+
+        KryoContext() {
+            NioConstant.registerKryoClasses(kryo);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.xiaohashu.second.NIO;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 回环压测工具：建立N个客户端连接，按比例发送心跳（类型1）和业务消息（类型2），统计吞吐量和延迟分位数。
+ * <ul>
+ *     <li>closed（闭环）：每个连接保持固定数量的在途请求，收到响应后立即发下一个，测最大吞吐</li>
+ *     <li>open（开环）：按固定总速率发送，延迟从“计划发送时间”算起。
+ *     发送线程落后时补发的请求也计入排队等待的时间，避免协调遗漏（coordinated omission）低估尾延迟</li>
+ * </ul>
+ * 参数通过 -Dload.xxx 系统属性配置，例如：
+ * <pre>
+ * java -Dload.mode=open -Dload.rate=50000 -Dload.connections=32 -Dload.payload=256 \
+ *      -Dload.embeddedServer=true com.xiaohashu.second.NIO.LoadGenerator
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("load.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("load.port", 9000);
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 16);
+    private static final String MODE = System.getProperty("load.mode", "closed");
+    // 闭环：每个连接的在途请求数；开环：所有连接合计的每秒请求数
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 1);
+    private static final int RATE = Integer.getInteger("load.rate", 10000);
+    private static final int SENDER_THREADS = Integer.getInteger("load.senderThreads", 1);
+    private static final int PAYLOAD_SIZE = Integer.getInteger("load.payload", 128);
+    // 心跳消息所占比例（0~100），其余为业务消息
+    private static final int HEARTBEAT_PERCENT = Integer.getInteger("load.heartbeatPercent", 50);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.durationSeconds", 30);
+    private static final long REQUEST_TIMEOUT_MILLIS = Long.getLong("load.requestTimeoutMillis", 10000L);
+    // 在本进程内启动一个回显服务端（不打印消息），便于单机回环测试
+    private static final boolean EMBEDDED_SERVER = Boolean.getBoolean("load.embeddedServer");
+
+    // 纳秒精度、3位有效数字，各IO线程并发记录
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram total = new Histogram(3);
+    private final LongAdder errors = new LongAdder();
+    private final String payload;
+    private final NioClient[] clients = new NioClient[CONNECTIONS];
+    private volatile boolean running = true;
+
+    private LoadGenerator() {
+        char[] chars = new char[PAYLOAD_SIZE];
+        Arrays.fill(chars, 'x');
+        this.payload = new String(chars);
+    }
+
+    private void run() throws Exception {
+        NioClientConfig clientConfig = new NioClientConfig();
+        clientConfig.setRequestTimeoutMillis(REQUEST_TIMEOUT_MILLIS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            clients[i] = new NioClient("Load-" + i, clientConfig);
+            clients[i].connect(HOST, PORT);
+        }
+        System.out.println("压测开始：模式=" + MODE + "，连接数=" + CONNECTIONS + "，消息体=" + PAYLOAD_SIZE + "字节"
+                + ("open".equals(MODE) ? "，目标速率=" + RATE + "/s" : "，每连接在途=" + CONCURRENCY));
+
+        List<Thread> senders = new ArrayList<>();
+        if ("open".equals(MODE)) {
+            for (int t = 0; t < SENDER_THREADS; t++) {
+                int index = t;
+                Thread sender = new Thread(() -> openLoop(index), "load-sender-" + t);
+                sender.setDaemon(true);
+                senders.add(sender);
+                sender.start();
+            }
+        } else {
+            for (NioClient client : clients) {
+                for (int i = 0; i < CONCURRENCY; i++) {
+                    closedLoop(client);
+                }
+            }
+        }
+
+        report();
+        running = false;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (NioClient client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * 闭环：响应（或失败）后立即在同一连接上发下一个请求
+     */
+    private void closedLoop(NioClient client) {
+        if (!running || !client.isConnected()) { // 连接已断开时停止，避免失败回调无限递归
+            return;
+        }
+        long start = System.nanoTime();
+        client.request(nextMessage(client), REQUEST_TIMEOUT_MILLIS).whenComplete((response, error) -> {
+            record(start, error);
+            closedLoop(client);
+        });
+    }
+
+    /**
+     * 开环：第i个请求的计划发送时间为 start + i * interval，延迟从计划时间算起
+     */
+    private void openLoop(int index) {
+        double perThreadRate = (double) RATE / SENDER_THREADS;
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perThreadRate);
+        long start = System.nanoTime();
+        long sent = 0;
+        int next = index;
+        while (running) {
+            long intended = start + sent * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            // 落后时不跳过，连续补发，补发请求的延迟包含落后时间
+            NioClient client = clients[next];
+            next += SENDER_THREADS;
+            if (next >= clients.length) {
+                next = index;
+            }
+            client.request(nextMessage(client), REQUEST_TIMEOUT_MILLIS)
+                    .whenComplete((response, error) -> record(intended, error));
+            sent++;
+        }
+    }
+
+    private BusinessMessage nextMessage(NioClient client) {
+        int type = ThreadLocalRandom.current().nextInt(100) < HEARTBEAT_PERCENT ? 1 : 2;
+        return new BusinessMessage(client.nextMessageId(), payload, System.currentTimeMillis(), type);
+    }
+
+    private void record(long startNanos, Throwable error) {
+        if (error != null) {
+            errors.increment();
+            return;
+        }
+        recorder.recordValue(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 每秒打印一次区间统计，预热结束后累计到总直方图
+     */
+    private void report() throws InterruptedException {
+        Histogram interval = null;
+        long lastErrors = 0;
+        for (int second = 1; second <= WARMUP_SECONDS + DURATION_SECONDS; second++) {
+            Thread.sleep(1000);
+            interval = recorder.getIntervalHistogram(interval);
+            long errorCount = errors.sum();
+            boolean warmup = second <= WARMUP_SECONDS;
+            System.out.printf("%s%3ds  %s  错误=%d%n", warmup ? "[预热]" : "", second,
+                    format(interval, 1.0), errorCount - lastErrors);
+            lastErrors = errorCount;
+            if (!warmup) {
+                total.add(interval);
+            }
+        }
+        System.out.println("===== 压测结果（不含预热，" + DURATION_SECONDS + "秒） =====");
+        System.out.println(format(total, DURATION_SECONDS) + "  错误总数=" + errors.sum());
+    }
+
+    private static String format(Histogram histogram, double seconds) {
+        return String.format("吞吐=%.0f/s p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        NioSocketServer server = null;
+        if (EMBEDDED_SERVER) {
+            NioServerConfig config = new NioServerConfig();
+            config.setPort(PORT);
+            config.setBusinessHandler(new EchoBusinessHandler());
+            NioSocketServer embedded = new NioSocketServer(config);
+            Thread boss = new Thread(() -> {
+                try {
+                    embedded.start();
+                } catch (Exception e) {
+                    System.err.println("内置服务端启动失败: " + e.getMessage());
+                }
+            }, "load-server");
+            boss.setDaemon(true);
+            boss.start();
+            Thread.sleep(500);
+            server = embedded;
+        }
+        try {
+            new LoadGenerator().run();
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 发送端批量收集器（单线程使用）：消息先攒在列表里，达到条数或估算字节数上限时由调用方 {@link #drain()}
+ * 编码为一个批量帧；未攒满的消息在linger到期或本轮IO结束时drain。只有一条时仍编码为普通帧。
+ * 消息在drain之前只是被引用，提交后调用方不能再修改。
+ */
+public class MessageBatcher {
+    private static final int MESSAGE_OVERHEAD = 24; // ID、类型、时间戳、长度前缀的估算字节数
+
+    private final KryoProtocolEncoder encoder;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final List<BusinessMessage> messages = new ArrayList<>();
+    private int estimatedBytes;
+
+    public MessageBatcher(KryoProtocolEncoder encoder, int maxMessages, int maxBytes) {
+        if (maxBytes >= KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("批量字节上限必须小于最大帧长: " + maxBytes);
+        }
+        this.encoder = encoder;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return 是否已攒满，需要立即drain
+     */
+    public boolean add(BusinessMessage message) {
+        messages.add(message);
+        String content = message.getContent();
+        // 按UTF-8最坏情况估算，保证批量帧不超过最大帧长
+        estimatedBytes += MESSAGE_OVERHEAD + (content == null ? 0 : content.length() * 3);
+        return messages.size() >= maxMessages || estimatedBytes >= maxBytes;
+    }
+
+    /**
+     * 把已收集的消息编码为一帧（读模式，调用方负责release），没有消息时返回null
+     */
+    public PooledByteBuffer drain() {
+        if (messages.isEmpty()) {
+            return null;
+        }
+        try {
+            return messages.size() == 1 ? encoder.encode(messages.get(0)) : encoder.encodeBatch(messages);
+        } finally {
+            // 编码失败（如单条消息超过最大帧长）时同样丢弃，否则之后每次drain都会失败
+            messages.clear();
+            estimatedBytes = 0;
+        }
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public int size() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,109 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 某个事件循环在一个统计区间内的指标快照（不可变），计数均为区间增量
+ */
+public final class MetricsSnapshot {
+    private final String name;
+    private final long timestampMillis;
+    private final long intervalMillis;
+    private final long selects;
+    private final long emptySelects;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long framesRead;
+    private final long framesWritten;
+    private final long[] messagesByType; // 下标为消息类型，最后一项汇总超出范围的类型
+    private final long decodeAvgNanos;
+    private final long decodeP99Nanos;
+    private final long encodeAvgNanos;
+    private final int openConnections;
+    private final long outboundQueueBytes;
+    private final int taskQueueSize;
+    private final long lagP50Nanos;
+    private final long lagP99Nanos;
+    private final long lagMaxNanos;
+
+    MetricsSnapshot(String name, long timestampMillis, long intervalMillis, long selects, long emptySelects,
+                    long bytesRead, long bytesWritten, long framesRead, long framesWritten, long[] messagesByType,
+                    long decodeAvgNanos, long decodeP99Nanos, long encodeAvgNanos, int openConnections,
+                    long outboundQueueBytes, int taskQueueSize, long lagP50Nanos, long lagP99Nanos, long lagMaxNanos) {
+        this.name = name;
+        this.timestampMillis = timestampMillis;
+        this.intervalMillis = intervalMillis;
+        this.selects = selects;
+        this.emptySelects = emptySelects;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.framesRead = framesRead;
+        this.framesWritten = framesWritten;
+        this.messagesByType = messagesByType;
+        this.decodeAvgNanos = decodeAvgNanos;
+        this.decodeP99Nanos = decodeP99Nanos;
+        this.encodeAvgNanos = encodeAvgNanos;
+        this.openConnections = openConnections;
+        this.outboundQueueBytes = outboundQueueBytes;
+        this.taskQueueSize = taskQueueSize;
+        this.lagP50Nanos = lagP50Nanos;
+        this.lagP99Nanos = lagP99Nanos;
+        this.lagMaxNanos = lagMaxNanos;
+    }
+
+    /**
+     * 区间内的每秒速率
+     */
+    public double perSecond(long count) {
+        return intervalMillis <= 0 ? 0 : count * 1000.0 / intervalMillis;
+    }
+
+    public long getMessages() {
+        long total = 0;
+        for (long count : messagesByType) {
+            total += count;
+        }
+        return total;
+    }
+
+    public String getName() { return name; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public long getIntervalMillis() { return intervalMillis; }
+    public long getSelects() { return selects; }
+    public long getEmptySelects() { return emptySelects; }
+    public long getBytesRead() { return bytesRead; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getFramesRead() { return framesRead; }
+    public long getFramesWritten() { return framesWritten; }
+    public long[] getMessagesByType() { return messagesByType.clone(); }
+    public long getDecodeAvgNanos() { return decodeAvgNanos; }
+    public long getDecodeP99Nanos() { return decodeP99Nanos; }
+    public long getEncodeAvgNanos() { return encodeAvgNanos; }
+    public int getOpenConnections() { return openConnections; }
+    public long getOutboundQueueBytes() { return outboundQueueBytes; }
+    public int getTaskQueueSize() { return taskQueueSize; }
+    public long getLagP50Nanos() { return lagP50Nanos; }
+    public long getLagP99Nanos() { return lagP99Nanos; }
+    public long getLagMaxNanos() { return lagMaxNanos; }
+
+    @Override
+    public String toString() {
+        StringBuilder types = new StringBuilder();
+        for (int type = 0; type < messagesByType.length; type++) {
+            if (messagesByType[type] > 0) {
+                types.append(type == messagesByType.length - 1 ? "其它" : String.valueOf(type))
+                        .append('=').append(String.format("%.0f", perSecond(messagesByType[type]))).append("/s ");
+            }
+        }
+        return "[" + name + "] 连接: " + openConnections
+                + "，select: " + selects + "（空轮询 " + emptySelects + "）"
+                + "，读: " + framesRead + "帧/" + bytesRead + "B，写: " + framesWritten + "帧/" + bytesWritten + "B"
+                + "，消息: " + types.toString().trim()
+                + "，解码: 平均" + micros(decodeAvgNanos) + "/p99 " + micros(decodeP99Nanos)
+                + "，编码: 平均" + micros(encodeAvgNanos)
+                + "，出站队列: " + outboundQueueBytes + "B，任务队列: " + taskQueueSize
+                + "，循环延迟: p50 " + micros(lagP50Nanos) + "/p99 " + micros(lagP99Nanos) + "/max " + micros(lagMaxNanos);
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1000.0);
+    }
+}
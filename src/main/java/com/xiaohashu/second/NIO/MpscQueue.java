@@ -0,0 +1,80 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 无锁多生产者单消费者队列（Vyukov链表队列）：
+ * <ul>
+ *     <li>生产者入队只有一次 getAndSet（XCHG指令），不CAS重试，不加锁，高并发提交时不会互相自旋</li>
+ *     <li>唯一的消费者出队只读写普通字段和一次有序写，没有原子操作</li>
+ *     <li>生产者交换尾指针后、链接next前的瞬间，消费者会把队列看成空；生产者链接完成后再唤醒消费者，任务不会丢失</li>
+ * </ul>
+ * {@link #poll()} 只能由同一个消费者线程调用；{@link #size()} 为遍历计数，只用于监控。
+ */
+final class MpscQueue<E> {
+    // 泛型类的字面量只能是原始类型，转换一次得到带通配符的更新器
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final AtomicReferenceFieldUpdater<MpscQueue<?>, Node<?>> TAIL_UPDATER =
+            (AtomicReferenceFieldUpdater) AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "tail");
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final AtomicReferenceFieldUpdater<MpscQueue<?>, Node<?>> HEAD_UPDATER =
+            (AtomicReferenceFieldUpdater) AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "head");
+
+    private volatile Node<E> head; // 消费者持有：已出队的哨兵节点
+    private volatile Node<E> tail; // 生产者竞争：最后入队的节点
+
+    MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        head = stub;
+        tail = stub;
+    }
+
+    /**
+     * 入队（任意线程）
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("不能入队null");
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> prev = (Node<E>) TAIL_UPDATER.getAndSet(this, node);
+        prev.next = node;
+    }
+
+    /**
+     * 出队（仅消费者线程），队列为空时返回null
+     */
+    public E poll() {
+        Node<E> first = head;
+        Node<E> next = first.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null; // 新哨兵不再持有任务
+        HEAD_UPDATER.lazySet(this, next);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Node<E> node = head.next; node != null && size < Integer.MAX_VALUE; node = node.next) {
+            size++;
+        }
+        return size;
+    }
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * 接收器：一个监听通道 + 一个Selector，只负责accept并把新连接移交给worker事件循环。
+ * <ul>
+ *     <li>每次唤醒循环accept直到队列为空或达到acceptBudget，重连风暴时一次唤醒接走一批连接，不是一次一个</li>
+ *     <li>多接收器模式下各接收器的监听通道都开启 SO_REUSEPORT 绑定同一端口，由内核把新连接分散到各自的accept队列，
+ *     每个接收器在自己的线程上accept，接收速率随接收器数量扩展</li>
+ *     <li>accept失败（如文件描述符耗尽）时暂停监听1秒，连接留在内核队列里，避免在同一个错误上空转</li>
+ * </ul>
+ */
+public class NioAcceptor implements Runnable {
+    private static final long ACCEPT_PAUSE_MILLIS = 1000;
+
+    private final String name;
+    private final NioEventLoopGroup workerGroup;
+    private final int acceptBudget;
+    private final Runnable afterSelect;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SelectionKey acceptKey;
+    private long resumeAcceptAt;
+    private volatile boolean running = true;
+
+    /**
+     * @param afterSelect 每次select返回后在接收器线程执行（统计打印），可为null
+     */
+    public NioAcceptor(String name, ServerSocketChannel serverChannel, NioEventLoopGroup workerGroup,
+                       int acceptBudget, Runnable afterSelect) throws IOException {
+        this.name = name;
+        this.serverChannel = serverChannel;
+        this.workerGroup = workerGroup;
+        this.acceptBudget = Math.max(1, acceptBudget);
+        this.afterSelect = afterSelect;
+        this.selector = Selector.open();
+        // 注册ACCEPT事件（使用枚举的OP_CODE）
+        this.acceptKey = serverChannel.register(selector, NioConstant.ACCEPT_EVENT.getOpCode());
+    }
+
+    /**
+     * 打开一个非阻塞监听通道并绑定端口。接收缓冲区在bind前设置，accept出的连接继承它，TCP窗口缩放才能按它协商
+     *
+     * @param reusePort 是否开启 SO_REUSEPORT（多接收器模式）
+     */
+    public static ServerSocketChannel openServerChannel(NioServerConfig config, int port, boolean reusePort)
+            throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            if (reusePort) {
+                SocketOption<Boolean> option = reusePortOption(channel);
+                if (option == null) {
+                    throw new IOException("当前平台不支持SO_REUSEPORT");
+                }
+                channel.setOption(option, true);
+            }
+            if (config.getReceiveBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+            }
+            channel.bind(new InetSocketAddress(port), config.getAcceptBacklog());
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 按名称查找 SO_REUSEPORT（StandardSocketOptions.SO_REUSEPORT 从JDK9开始才有），不支持时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static SocketOption<Boolean> reusePortOption(NetworkChannel channel) {
+        for (SocketOption<?> option : channel.supportedOptions()) {
+            if ("SO_REUSEPORT".equals(option.name()) && option.type() == Boolean.class) {
+                return (SocketOption<Boolean>) option;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                // 阻塞等待事件（超时1秒）
+                int readyChannels = selector.select(1000);
+                if (afterSelect != null) {
+                    afterSelect.run();
+                }
+                resumeAcceptIfPaused();
+                if (readyChannels == 0) {
+                    continue;
+                }
+
+                // 处理就绪事件
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove(); // 避免重复处理
+
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptBatch();
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println(name + " 事件循环异常: " + e.getMessage());
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 一次唤醒内连续accept，队列取空或用完预算为止；预算用完时监听通道仍就绪，下一轮select立即返回继续接收
+     */
+    private void acceptBatch() {
+        for (int i = 0; i < acceptBudget; i++) {
+            SocketChannel clientChannel;
+            try {
+                clientChannel = serverChannel.accept();
+            } catch (IOException e) {
+                System.err.println(name + " accept失败，暂停接收" + ACCEPT_PAUSE_MILLIS + "ms: " + e.getMessage());
+                acceptKey.interestOps(0);
+                resumeAcceptAt = System.currentTimeMillis() + ACCEPT_PAUSE_MILLIS;
+                return;
+            }
+            if (clientChannel == null) {
+                return;
+            }
+            workerGroup.next().register(clientChannel);
+        }
+    }
+
+    private void resumeAcceptIfPaused() {
+        if (acceptKey.isValid() && acceptKey.interestOps() == 0 && System.currentTimeMillis() >= resumeAcceptAt) {
+            acceptKey.interestOps(NioConstant.ACCEPT_EVENT.getOpCode());
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public String getName() { return name; }
+    public ServerSocketChannel getServerChannel() { return serverChannel; }
+}
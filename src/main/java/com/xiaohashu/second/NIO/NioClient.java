@@ -1,89 +1,744 @@
 package com.xiaohashu.second.NIO;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 异步流水线客户端：一个IO线程驱动Selector完成连接、读写和请求超时，调用方线程只负责编码和投递任务。
+ * <ul>
+ *     <li>{@link #request(BusinessMessage)} 返回 CompletableFuture，按 messageId 与响应配对，可同时有成千上万个请求在途</li>
+ *     <li>每个请求一个时间轮节点，超时未响应则以 {@link TimeoutException} 结束</li>
+ *     <li>接收缓冲区按需扩容，半包留在缓冲区等待后续数据，不会错解析</li>
+ *     <li>自动心跳用预编码模板发送，响应在解码器中直接识别，不创建对象</li>
+ *     <li>开启批量发送后，消息在IO线程按条数/字节数/linger时间合并为批量帧，提交后不能再修改消息</li>
+ *     <li>开启压缩后，超过阈值的帧在IO线程入队时压缩（每个客户端一个压缩上下文）</li>
+ *     <li>服务端发来的文件（文件头帧 + 原始字节）从直接内存的接收缓冲区写入 {@link FileReceiver} 给出的文件通道，
+ *     收完后文件头作为响应完成同ID的请求</li>
+ *     <li>{@link #sendStream} 把任意大小的数据拆成有界的分块帧上传，出站队列快发完时才读取下一块，
+ *     其它请求随时插入分块之间，不会排在整个传输之后</li>
+ * </ul>
+ * 响应的 future 在IO线程完成，回调中不要做阻塞操作（需要时用 thenXxxAsync 切换线程）。
+ */
 public class NioClient {
-    private SocketChannel socketChannel;
-    private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
-    private ByteBuffer writeBuffer = ByteBuffer.allocate(8192);
-    private final KryoSerializer kryoSerializer = KryoSerializer.getInstance();
+    private static final int BUFFER_SIZE = 8192;
+
     private final String clientId; // 客户端唯一标识，区分三个客户端
+    private final NioClientConfig config;
+    private final KryoProtocolDecoder decoder = new KryoProtocolDecoder(this::onHeartbeat);
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+    private final AtomicLong messageIdGenerator = new AtomicLong(1);
     public static final Scanner scanner = new Scanner(System.in);
+
+    // 其它线程提交给IO线程的任务，多次提交只唤醒一次Selector
+    private final ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile boolean writable = true;
+    private volatile long lastHeartbeatRttMillis = -1;
+    private Thread ioThread;
+
+    // 以下字段只在IO线程访问
+    private Selector selector;
+    private SocketChannel socketChannel;
+    private SelectionKey key;
+    private final Map<Long, PendingRequest> pendingRequests = new HashMap<>();
+    private OutboundBuffer outboundBuffer;
+    private final ByteBuffer[] gatherScratch = new ByteBuffer[OutboundBuffer.MAX_GATHER];
+    private PooledByteBuffer receiveBuffer;
+    private HashedTimingWheel timingWheel;
+    private boolean flushNeeded;
+    private final MessageBatcher batcher; // 未开启批量发送时为null
+    private final FrameCompressor compressor;
+    private final LingerTimeout lingerTimeout = new LingerTimeout();
+    private final HeartbeatTimeout heartbeatTimeout = new HeartbeatTimeout();
+    private long heartbeatId = -1; // 在途的自动心跳ID，-1表示没有
+    private int missedHeartbeats;
+    private long lastReadMillis;
+    private long heartbeatSentMillis;
+    // 正在接收的文件：剩余字节数大于0时接收缓冲区中的数据属于文件；打开目标失败时通道为null，数据丢弃
+    private FileTransferHeader receivingHeader;
+    private FileChannel receivingFile;
+    private long fileRemaining;
+    private IOException fileError;
+    // 正在上传的分块流，轮流发送各流的下一块
+    private final ArrayDeque<OutboundStream> streams = new ArrayDeque<>();
+
     public NioClient(String clientId) {
+        this(clientId, new NioClientConfig());
+    }
+
+    public NioClient(String clientId, NioClientConfig config) {
         this.clientId = clientId;
+        this.config = config;
+        this.batcher = config.getBatchMaxMessages() > 1
+                ? new MessageBatcher(encoder, config.getBatchMaxMessages(), config.getBatchMaxBytes())
+                : null;
+        this.compressor = new FrameCompressor(config.getCompressionThreshold(), null);
     }
 
     /**
-     * 连接服务端
+     * 连接服务端，连接建立或超时后返回
      */
     public void connect(String host, int port) throws Exception {
+        selector = Selector.open();
         socketChannel = SocketChannel.open();
         socketChannel.configureBlocking(false); // 非阻塞模式
-        // 连接服务端
-        boolean connected = socketChannel.connect(new InetSocketAddress(host, port));
-        if (!connected) {
-            // 非阻塞连接需要等待finishConnect
-            while (!socketChannel.finishConnect()) {
-                System.out.println(clientId + "：正在连接服务端...");
-                Thread.sleep(100);
-            }
+        socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        outboundBuffer = new OutboundBuffer(config.getWriteBufferHighWaterMark(), config.getWriteBufferLowWaterMark());
+        receiveBuffer = PooledBufferAllocator.getInstance().allocate(BUFFER_SIZE);
+        timingWheel = new HashedTimingWheel(config.getTimerTickMillis(), config.getTimerWheelSize(), System.currentTimeMillis());
+
+        // 非阻塞连接：立即连上直接关注读，否则等OP_CONNECT
+        if (socketChannel.connect(new InetSocketAddress(host, port))) {
+            key = socketChannel.register(selector, SelectionKey.OP_READ);
+            connectFuture.complete(null);
+        } else {
+            key = socketChannel.register(selector, SelectionKey.OP_CONNECT);
+        }
+
+        running = true;
+        ioThread = new Thread(this::run, clientId + "-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+
+        try {
+            connectFuture.get(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            close();
+            throw e;
         }
         System.out.println(clientId + "：成功连接服务端，地址：" + socketChannel.getRemoteAddress());
+        long interval = config.getHeartbeatIntervalMillis();
+        if (interval > 0) {
+            execute(() -> {
+                if (!closed) {
+                    timingWheel.schedule(heartbeatTimeout, System.currentTimeMillis() + interval);
+                }
+            });
+        }
+    }
+
+    // ==================== 调用方API（线程安全） ====================
+
+    /**
+     * 分配一个本客户端内唯一的消息ID（0留给服务端主动推送）
+     */
+    public long nextMessageId() {
+        return messageIdGenerator.getAndIncrement();
+    }
+
+    /**
+     * 发送请求，按默认超时等待同 messageId 的响应
+     */
+    public CompletableFuture<BusinessMessage> request(BusinessMessage message) {
+        return request(message, config.getRequestTimeoutMillis());
     }
 
     /**
-     * 发送消息（心跳/业务）
+     * 发送请求，响应到达时 future 正常完成；超时、连接关闭或同ID请求仍在途时异常完成，
+     * 服务端限流或过载回复繁忙帧时以 RejectedExecutionException 完成
      */
-    public void sendMessage(BusinessMessage message) throws Exception {
-        // 1. Kryo序列化消息体，拼接服务端协议头（8字节：4总长度+4消息类型）
-        byte[] bodyBytes = kryoSerializer.serialize(message);
-        int totalLength = 8 + bodyBytes.length;
+    public CompletableFuture<BusinessMessage> request(BusinessMessage message, long timeoutMillis) {
+        CompletableFuture<BusinessMessage> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
+        }
+        // 不批量时在调用方线程编码，IO线程只负责入队和写出；批量时在IO线程合并编码
+        PooledByteBuffer frame = batcher == null ? encoder.encode(message) : null;
+        long messageId = message.getMessageId();
+        execute(() -> {
+            if (closed) {
+                release(frame);
+                future.completeExceptionally(new ClosedChannelException());
+                return;
+            }
+            if (pendingRequests.containsKey(messageId)) {
+                release(frame);
+                future.completeExceptionally(new IllegalStateException("消息ID已有请求在途: " + messageId));
+                return;
+            }
+            PendingRequest pending = new PendingRequest(messageId, future);
+            pendingRequests.put(messageId, pending);
+            timingWheel.schedule(pending, System.currentTimeMillis() + timeoutMillis);
+            send(frame, message);
+        });
+        return future;
+    }
 
-        // 2. 写入协议头和消息体到缓冲区
-        writeBuffer.clear();
-        writeBuffer.putInt(totalLength); // 总长度
-        writeBuffer.putInt(message.getMessageType()); // 消息类型
-        writeBuffer.put(bodyBytes); // Kryo序列化后的消息体
-        writeBuffer.flip();
+    /**
+     * 只发送不等待响应
+     */
+    public void sendMessage(BusinessMessage message) {
+        if (closed) {
+            return;
+        }
+        PooledByteBuffer frame = batcher == null ? encoder.encode(message) : null;
+        execute(() -> {
+            if (closed) {
+                release(frame);
+                return;
+            }
+            send(frame, message);
+        });
+    }
 
-        // 3. 非阻塞写入通道
-        while (writeBuffer.hasRemaining()) {
-            socketChannel.write(writeBuffer);
+    /**
+     * 分块上传：header描述本流（流ID即其消息ID），数据从source读取直到EOF，拆成 streamChunkSize 的分块帧发送。
+     * source在IO线程读取（适合文件、内存等不会长时间阻塞的数据源），发送完或失败后关闭。
+     * 数据发完后开始计算请求超时，服务端业务处理器按header的消息ID应答时 future 完成；读取数据源失败时以该异常结束
+     */
+    public CompletableFuture<BusinessMessage> sendStream(BusinessMessage header, ReadableByteChannel source) {
+        CompletableFuture<BusinessMessage> future = new CompletableFuture<>();
+        int chunkSize = config.getStreamChunkSize();
+        if (chunkSize <= KryoProtocolDecoder.STREAM_HEADER_LENGTH || chunkSize > KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+            closeQuietly(source);
+            future.completeExceptionally(new IllegalArgumentException("分块大小非法: " + chunkSize));
+            return future;
+        }
+        if (closed) {
+            closeQuietly(source);
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
         }
-        System.out.println(clientId + "：发送消息成功，ID：" + message.getMessageId() + "，内容：" + message.getContent());
+        PooledByteBuffer startFrame = encoder.encodeStreamStart(header);
+        long messageId = header.getMessageId();
+        execute(() -> {
+            if (closed || pendingRequests.containsKey(messageId)) {
+                release(startFrame);
+                closeQuietly(source);
+                future.completeExceptionally(closed ? new ClosedChannelException()
+                        : new IllegalStateException("消息ID已有请求在途: " + messageId));
+                return;
+            }
+            PendingRequest pending = new PendingRequest(messageId, future);
+            pendingRequests.put(messageId, pending); // 数据发完后才开始计时
+            enqueue(startFrame);
+            streams.add(new OutboundStream(header.getMessageType(), messageId, source, pending));
+        });
+        return future;
+    }
+
+    /**
+     * 分块上传文件
+     */
+    public CompletableFuture<BusinessMessage> sendStream(BusinessMessage header, Path path) {
+        try {
+            return sendStream(header, FileChannel.open(path, StandardOpenOption.READ));
+        } catch (IOException e) {
+            CompletableFuture<BusinessMessage> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private static void closeQuietly(ReadableByteChannel source) {
+        try {
+            source.close();
+        } catch (IOException ignored) {
+            // 关闭失败无需处理
+        }
+    }
+
+    private static void release(PooledByteBuffer frame) {
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * 出站队列是否低于高水位线；发送方可据此限速，避免无限堆积
+     */
+    public boolean isWritable() {
+        return writable;
     }
 
     /**
-     * 接收服务端响应（轮询读取）
+     * 最近一次自动心跳的往返时间（毫秒），尚未收到过响应时为-1
      */
-    public void receiveResponse() throws Exception {
-        readBuffer.clear();
-        int bytesRead = socketChannel.read(readBuffer);
-        if (bytesRead > 0) {
-            readBuffer.flip();
-            // 解析服务端协议：先读8字节头，再读消息体
-            while (readBuffer.remaining() >= 8) {
-                int totalLength = readBuffer.getInt();
-                int messageType = readBuffer.getInt();
-                int bodyLength = totalLength - 8;
-                byte[] bodyBytes = new byte[bodyLength];
-                readBuffer.get(bodyBytes);
+    public long getLastHeartbeatRttMillis() {
+        return lastHeartbeatRttMillis;
+    }
 
-                // Kryo反序列化响应消息
-                BusinessMessage response = kryoSerializer.deserialize(bodyBytes, BusinessMessage.class);
-                System.out.println(clientId + "：收到服务端响应，ID：" + response.getMessageId() + "，内容：" + response.getContent());
+    public boolean isConnected() {
+        return connectFuture.isDone() && !connectFuture.isCompletedExceptionally() && !closed;
+    }
+
+    private void execute(Runnable task) {
+        taskQueue.offer(task);
+        if (closed) {
+            runAllTasks(); // IO线程已退出，由提交方执行，任务内部按closed分支清理
+        } else if (Thread.currentThread() != ioThread && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    // ==================== IO线程 ====================
+
+    private void run() {
+        Throwable cause = null;
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                long timeout = timingWheel.millisToNextTick(now);
+                if (!taskQueue.isEmpty() || timeout == 0 || canPumpStreams()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout < 0 ? 1000 : timeout);
+                }
+                wakeupPending.set(false);
+
+                timingWheel.advance(System.currentTimeMillis());
+                runAllTasks();
+                processSelectedKeys();
+                pumpStreams();
+                if (batcher != null && config.getBatchLingerMillis() <= 0 && !batcher.isEmpty()) {
+                    flushBatch(); // 不等待linger：本轮提交的消息合并为一帧
+                }
+                if (flushNeeded) {
+                    flushNeeded = false;
+                    outboundBuffer.flush();
+                    writeOutbound();
+                }
+            }
+        } catch (Throwable t) {
+            cause = t;
+        } finally {
+            shutdownOnIoThread(cause);
+        }
+    }
+
+    private void processSelectedKeys() throws IOException {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey selected = iterator.next();
+            iterator.remove();
+            if (!selected.isValid()) {
+                continue;
+            }
+            if (selected.isConnectable()) {
+                socketChannel.finishConnect();
+                selected.interestOps(SelectionKey.OP_READ);
+                connectFuture.complete(null);
             }
-        } else if (bytesRead == -1) {
+            if (selected.isReadable()) {
+                handleRead();
+            }
+            if (selected.isValid() && selected.isWritable()) {
+                writeOutbound();
+            }
+        }
+    }
+
+    private void handleRead() throws IOException {
+        ByteBuffer buffer = receiveBuffer.buffer();
+        if (!buffer.hasRemaining()) {
+            buffer = growReceiveBuffer(); // 半包已占满缓冲区
+        }
+        int bytesRead = socketChannel.read(buffer);
+        if (bytesRead == -1) {
             // 服务端关闭连接
             System.out.println(clientId + "：服务端断开连接");
-            close();
+            running = false;
+            return;
+        }
+        if (bytesRead == 0) {
+            return;
+        }
+        lastReadMillis = System.currentTimeMillis();
+        boolean fileHeader = true;
+        while (fileHeader) {
+            fileHeader = false;
+            if (fileRemaining > 0) {
+                writeToFile(buffer);
+                if (fileRemaining > 0) {
+                    break; // 缓冲区中的数据都属于文件，等待后续数据
+                }
+                finishFile();
+            }
+            // 解码器在文件头帧后停止，缓冲区剩余的字节是文件数据，写完后继续解码其后的帧
+            List<BusinessMessage> messages = decoder.decode(buffer);
+            for (BusinessMessage message : messages) {
+                if (message instanceof FileTransferHeader) {
+                    startFile((FileTransferHeader) message);
+                    fileHeader = true;
+                } else {
+                    dispatch(message);
+                }
+            }
+        }
+        if (buffer.position() == 0 && buffer.capacity() > BUFFER_SIZE) {
+            replaceReceiveBuffer(BUFFER_SIZE); // 大帧处理完缩回默认容量
+        }
+    }
+
+    private void dispatch(BusinessMessage message) {
+        PendingRequest pending = pendingRequests.remove(message.getMessageId());
+        if (pending == null) {
+            config.getMessageListener().accept(message);
+            return;
+        }
+        timingWheel.cancel(pending);
+        if (message.getMessageType() == HeartbeatCodec.BUSY_TYPE) {
+            // 服务端限流或过载，请求未被处理
+            pending.future.completeExceptionally(
+                    new RejectedExecutionException("服务端繁忙，请求被拒绝，ID：" + message.getMessageId()));
+            return;
+        }
+        pending.future.complete(message);
+    }
+
+    private void startFile(FileTransferHeader header) {
+        PendingRequest pending = pendingRequests.get(header.getMessageId());
+        if (pending != null) {
+            timingWheel.cancel(pending); // 服务端已应答，文件传输时间不计入请求超时
+        }
+        receivingHeader = header;
+        fileRemaining = header.getFileLength();
+        try {
+            receivingFile = config.getFileReceiver().open(header);
+        } catch (IOException | RuntimeException e) {
+            System.err.println(clientId + "：打开文件接收目标失败，丢弃文件数据: " + e.getMessage());
+            fileError = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        if (fileRemaining == 0) {
+            finishFile();
+        }
+    }
+
+    /**
+     * 把接收缓冲区（写模式）中属于文件的字节写入文件通道，直接内存到文件，不经过堆
+     */
+    private void writeToFile(ByteBuffer buffer) {
+        buffer.flip();
+        int limit = buffer.limit();
+        int length = (int) Math.min(buffer.remaining(), fileRemaining);
+        int end = buffer.position() + length;
+        buffer.limit(end);
+        if (receivingFile != null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    receivingFile.write(buffer);
+                }
+            } catch (IOException e) {
+                System.err.println(clientId + "：写入文件失败，丢弃剩余文件数据: " + e.getMessage());
+                fileError = e;
+                closeReceivingFile();
+            }
         }
+        buffer.limit(limit);
+        buffer.position(end); // 写入失败时同样跳过这段文件数据
+        buffer.compact();
+        fileRemaining -= length;
     }
-    private long messageId = 1L;
+
+    /**
+     * 文件收完：关闭目标通道，文件头作为响应交给调用方；接收失败时同ID的请求以异常结束
+     */
+    private void finishFile() {
+        FileTransferHeader header = receivingHeader;
+        IOException error = fileError;
+        closeReceivingFile();
+        receivingHeader = null;
+        fileError = null;
+        if (error == null) {
+            dispatch(header);
+            return;
+        }
+        PendingRequest pending = pendingRequests.remove(header.getMessageId());
+        if (pending != null) {
+            timingWheel.cancel(pending);
+            pending.future.completeExceptionally(error);
+        }
+    }
+
+    private void closeReceivingFile() {
+        if (receivingFile == null) {
+            return;
+        }
+        try {
+            receivingFile.close();
+        } catch (IOException e) {
+            System.err.println(clientId + "：关闭文件失败: " + e.getMessage());
+        }
+        receivingFile = null;
+    }
+
+    /**
+     * 解码器心跳快速通道：只消费自动心跳的响应，其它心跳帧（手动请求的响应、服务端主动心跳）按普通消息解码
+     */
+    private boolean onHeartbeat(long messageId, long sendTime) {
+        if (messageId != heartbeatId) {
+            return false;
+        }
+        heartbeatId = -1;
+        missedHeartbeats = 0;
+        lastHeartbeatRttMillis = System.currentTimeMillis() - sendTime;
+        return true;
+    }
+
+    private ByteBuffer growReceiveBuffer() {
+        int capacity = receiveBuffer.capacity();
+        if (capacity >= KryoProtocolDecoder.MAX_MESSAGE_LENGTH) {
+            throw new IllegalStateException("接收缓冲区已达上限: " + KryoProtocolDecoder.MAX_MESSAGE_LENGTH);
+        }
+        replaceReceiveBuffer(Math.min(capacity << 1, KryoProtocolDecoder.MAX_MESSAGE_LENGTH));
+        return receiveBuffer.buffer();
+    }
+
+    private void replaceReceiveBuffer(int capacity) {
+        PooledByteBuffer replacement = PooledBufferAllocator.getInstance().allocate(capacity);
+        ByteBuffer old = receiveBuffer.buffer();
+        old.flip();
+        replacement.buffer().put(old);
+        receiveBuffer.release();
+        receiveBuffer = replacement;
+    }
+
+    /**
+     * 已编码的帧直接入队；批量模式下消息进入收集器，攒满立即编码，否则等linger到期或本轮结束
+     */
+    private void send(PooledByteBuffer frame, BusinessMessage message) {
+        if (frame != null) {
+            enqueue(frame);
+            return;
+        }
+        if (batcher.add(message)) {
+            flushBatch();
+        } else if (config.getBatchLingerMillis() > 0 && !lingerTimeout.isScheduled()) {
+            timingWheel.schedule(lingerTimeout, System.currentTimeMillis() + config.getBatchLingerMillis());
+        }
+    }
+
+    private void flushBatch() {
+        timingWheel.cancel(lingerTimeout);
+        PooledByteBuffer frame = batcher.drain();
+        if (frame != null) {
+            enqueue(frame);
+        }
+    }
+
+    private void enqueue(PooledByteBuffer frame) {
+        outboundBuffer.write(compressor.compress(frame)); // 在IO线程压缩，压缩上下文不共享
+        writable = outboundBuffer.isWritable();
+        flushNeeded = true;
+    }
+
+    private boolean canPumpStreams() {
+        return !streams.isEmpty() && connectFuture.isDone()
+                && outboundBuffer.getPendingBytes() < config.getStreamChunkSize();
+    }
+
+    /**
+     * 出站队列积压不到一个分块时，轮流给各流读取并入队下一块；同一轮最多给每个流一次机会
+     */
+    private void pumpStreams() {
+        for (int n = streams.size(); n > 0 && canPumpStreams(); n--) {
+            OutboundStream stream = streams.poll();
+            if (stream.pump()) {
+                streams.add(stream);
+            }
+        }
+    }
+
+    private void writeOutbound() throws IOException {
+        if (!connectFuture.isDone()) {
+            return; // 连接建立后再写，帧留在队列中
+        }
+        boolean done = outboundBuffer.writeTo(socketChannel, gatherScratch);
+        writable = outboundBuffer.isWritable();
+        int ops = key.interestOps();
+        if (done && (ops & SelectionKey.OP_WRITE) != 0) {
+            key.interestOps(ops & ~SelectionKey.OP_WRITE);
+        } else if (!done && (ops & SelectionKey.OP_WRITE) == 0) {
+            key.interestOps(ops | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void runAllTasks() {
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                System.err.println(clientId + "：任务执行异常: " + t);
+            }
+        }
+    }
+
+    /**
+     * IO线程退出：关闭连接，所有在途请求和排队任务以异常结束，归还缓冲区
+     */
+    private void shutdownOnIoThread(Throwable cause) {
+        closed = true;
+        if (cause != null) {
+            System.err.println(clientId + "：IO线程异常退出: " + cause);
+        }
+        IOException closedException = cause == null ? new ClosedChannelException() : new IOException("连接异常关闭", cause);
+        connectFuture.completeExceptionally(closedException);
+        runAllTasks(); // closed已置位，排队的请求直接失败
+        for (PendingRequest pending : pendingRequests.values()) {
+            timingWheel.cancel(pending);
+            pending.future.completeExceptionally(closedException);
+        }
+        pendingRequests.clear();
+        for (OutboundStream stream : streams) {
+            closeQuietly(stream.source);
+        }
+        streams.clear();
+        outboundBuffer.releaseAll();
+        receiveBuffer.release();
+        closeReceivingFile();
+        try {
+            socketChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println(clientId + "：关闭连接异常: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在途请求：同时作为时间轮节点负责超时
+     */
+    private final class PendingRequest extends HashedTimingWheel.Timeout {
+        private final long messageId;
+        private final CompletableFuture<BusinessMessage> future;
+
+        PendingRequest(long messageId, CompletableFuture<BusinessMessage> future) {
+            this.messageId = messageId;
+            this.future = future;
+        }
+
+        @Override
+        protected void expire(long nowMillis) {
+            pendingRequests.remove(messageId);
+            future.completeExceptionally(new TimeoutException("请求超时，ID：" + messageId));
+        }
+    }
+
+    /**
+     * 正在上传的分块流（只在IO线程访问）
+     */
+    private final class OutboundStream {
+        private final int messageType;
+        private final long streamId;
+        private final ReadableByteChannel source;
+        private final PendingRequest pending;
+
+        OutboundStream(int messageType, long streamId, ReadableByteChannel source, PendingRequest pending) {
+            this.messageType = messageType;
+            this.streamId = streamId;
+            this.source = source;
+            this.pending = pending;
+        }
+
+        /**
+         * 读取并入队下一块
+         *
+         * @return 是否还有后续分块
+         */
+        boolean pump() {
+            PooledByteBuffer frame = PooledBufferAllocator.getInstance().allocate(config.getStreamChunkSize());
+            ByteBuffer buffer = frame.buffer();
+            buffer.limit(config.getStreamChunkSize());
+            buffer.position(KryoProtocolDecoder.STREAM_HEADER_LENGTH);
+            int read;
+            try {
+                do {
+                    read = source.read(buffer); // 读满一块、读到EOF或数据源暂时无数据为止
+                } while (read > 0 && buffer.hasRemaining());
+            } catch (IOException e) {
+                frame.release();
+                finish(StreamChunk.ABORT);
+                if (pendingRequests.remove(streamId) != null) {
+                    pending.future.completeExceptionally(e);
+                }
+                return false;
+            }
+            if (buffer.position() > KryoProtocolDecoder.STREAM_HEADER_LENGTH) {
+                KryoProtocolEncoder.finishStreamChunk(buffer, 0, messageType, streamId, StreamChunk.DATA);
+                buffer.flip();
+                enqueue(frame);
+            } else {
+                frame.release();
+            }
+            if (read >= 0) {
+                return true;
+            }
+            finish(StreamChunk.END);
+            timingWheel.schedule(pending, System.currentTimeMillis() + config.getRequestTimeoutMillis());
+            return false;
+        }
+
+        private void finish(byte kind) {
+            closeQuietly(source);
+            enqueue(encoder.encodeStreamControl(messageType, streamId, kind));
+        }
+    }
+
+    /**
+     * 批量发送的linger到期：把未攒满的消息发出去
+     */
+    private final class LingerTimeout extends HashedTimingWheel.Timeout {
+        @Override
+        protected void expire(long nowMillis) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * 自动心跳：上一次心跳未响应且期间没有收到任何数据记为丢失一次，连续丢失达到上限则关闭连接。
+     * 响应排在大量数据后面时，持续收到的数据已能证明连接存活，不算丢失。
+     */
+    private final class HeartbeatTimeout extends HashedTimingWheel.Timeout {
+        @Override
+        protected void expire(long nowMillis) {
+            if (heartbeatId != -1 && lastReadMillis < heartbeatSentMillis) {
+                if (++missedHeartbeats >= config.getHeartbeatMaxMissed()) {
+                    System.err.println(clientId + "：连续" + missedHeartbeats + "次心跳无响应，关闭连接");
+                    running = false;
+                    return;
+                }
+            } else {
+                missedHeartbeats = 0;
+            }
+            heartbeatId = nextMessageId();
+            heartbeatSentMillis = nowMillis;
+            PooledByteBuffer frame = PooledBufferAllocator.getInstance().allocate(HeartbeatCodec.frameLength());
+            HeartbeatCodec.encodeRequest(frame.buffer(), heartbeatId, nowMillis);
+            frame.buffer().flip();
+            enqueue(frame);
+            timingWheel.schedule(this, nowMillis + config.getHeartbeatIntervalMillis());
+        }
+    }
+
+    // ==================== 交互式演示 ====================
 
     public void interactiveSend() {
         while (true) {
@@ -96,45 +751,37 @@ public class NioClient {
                 System.out.print("请选择操作（1/2/3）：");
                 String choice = scanner.nextLine().trim();
 
-
                 switch (choice) {
                     case "1":
-                        // 发送心跳消息（使用全局messageId，避免局部变量覆盖）
+                        // 发送心跳消息并等待同ID的响应
                         BusinessMessage heartbeatMsg = new BusinessMessage(
-                                messageId, // 直接使用全局自增ID
+                                nextMessageId(),
                                 clientId + " 心跳请求（手动发送）",
                                 System.currentTimeMillis(),
                                 1 // 心跳消息类型
                         );
-                        sendMessage(heartbeatMsg);
-                        Thread.sleep(500); // 短暂等待后接收响应
-                        receiveResponse();
-                        messageId++; // 心跳消息发送后，ID自增（关键修复）
+                        printResponse(heartbeatMsg, request(heartbeatMsg).get());
                         break;
                     case "2":
                         // 发送业务消息（手动输入内容）
                         System.out.print("请输入业务消息内容：");
                         String businessContent = scanner.nextLine();
-                        // 防御性判断：避免null和空字符串（修复潜在空指针）
+                        // 防御性判断：避免null和空字符串
                         if (businessContent == null || businessContent.trim().isEmpty()) {
                             businessContent = clientId + " 业务数据：" + UUID.randomUUID().toString().substring(0, 8);
                         } else {
                             businessContent = businessContent.trim();
                         }
-                        // 直接使用全局messageId，无需定义messageId2（删除冗余变量）
                         BusinessMessage businessMsg = new BusinessMessage(
-                                messageId,
+                                nextMessageId(),
                                 businessContent,
                                 System.currentTimeMillis(),
                                 2 // 业务消息类型
                         );
-                        sendMessage(businessMsg);
-                        Thread.sleep(500);
-                        receiveResponse();
-                        messageId++; // 业务消息发送后，ID自增
+                        printResponse(businessMsg, request(businessMsg).get());
                         break;
                     case "3":
-                        // 退出客户端：优雅关闭资源（补充socketChannel判空）
+                        // 退出客户端：优雅关闭资源
                         System.out.println(clientId + "：准备退出，关闭连接...");
                         close();
                         if (scanner != null) {
@@ -143,7 +790,7 @@ public class NioClient {
                         return;
                     default:
                         System.out.println("无效的选择，请输入1/2/3！");
-                        break; // 补充break，规范switch语法
+                        break;
                 }
             } catch (Exception e) {
                 System.err.println(clientId + "：消息发送异常：" + e.getMessage());
@@ -151,8 +798,22 @@ public class NioClient {
         }
     }
 
+    private void printResponse(BusinessMessage request, BusinessMessage response) {
+        System.out.println(clientId + "：收到服务端响应，ID：" + response.getMessageId() + "，内容：" + response.getContent()
+                + "，耗时：" + (System.currentTimeMillis() - request.getSendTime()) + "ms");
+    }
+
+    /**
+     * 关闭连接并等待IO线程退出，在途请求以异常结束
+     */
     public void close() throws Exception {
-        if (socketChannel != null) {
+        running = false;
+        if (ioThread != null && ioThread.isAlive()) {
+            selector.wakeup();
+            if (Thread.currentThread() != ioThread) {
+                ioThread.join();
+            }
+        } else if (socketChannel != null) {
             socketChannel.close();
         }
         System.out.println(clientId + "：客户端连接已关闭");
@@ -170,4 +831,4 @@ public class NioClient {
         // 2. 启动交互式消息发送
         client.interactiveSend();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.xiaohashu.second.NIO;
+
+import lombok.Data;
+
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * 客户端配置：默认值可通过 -Dnio.client.xxx 系统属性覆盖
+ */
+@Data
+public class NioClientConfig {
+    private long connectTimeoutMillis = Long.getLong("nio.client.connectTimeoutMillis", 3000L);
+    // 请求未收到响应的默认超时
+    private long requestTimeoutMillis = Long.getLong("nio.client.requestTimeoutMillis", 3000L);
+    // 出站队列高/低水位线（字节）
+    private int writeBufferHighWaterMark = Integer.getInteger("nio.client.writeBufferHighWaterMark", 1024 * 1024);
+    private int writeBufferLowWaterMark = Integer.getInteger("nio.client.writeBufferLowWaterMark", 512 * 1024);
+    // 超时检测时间轮：tick间隔（毫秒）和槽位数（2的幂）
+    private long timerTickMillis = Long.getLong("nio.client.timerTickMillis", 10L);
+    private int timerWheelSize = Integer.getInteger("nio.client.timerWheelSize", 1024);
+    // 自动心跳间隔（毫秒，0表示关闭）；连续多少次心跳未收到响应判定连接失效并关闭
+    private long heartbeatIntervalMillis = Long.getLong("nio.client.heartbeatIntervalMillis", 30000L);
+    private int heartbeatMaxMissed = Integer.getInteger("nio.client.heartbeatMaxMissed", 3);
+    // 批量发送：最多攒多少条/多少字节合成一个批量帧（条数<=1表示不批量），
+    // 未攒满时最多等待linger毫秒；linger为0表示本轮IO结束时立即发送（只合并同时提交的消息）
+    private int batchMaxMessages = Integer.getInteger("nio.client.batchMaxMessages", 1);
+    private int batchMaxBytes = Integer.getInteger("nio.client.batchMaxBytes", 64 * 1024);
+    private long batchLingerMillis = Long.getLong("nio.client.batchLingerMillis", 0L);
+    // 消息体达到多少字节时用LZ4压缩（0表示不压缩）
+    private int compressionThreshold = Integer.getInteger("nio.client.compressionThreshold", 0);
+    // 分块流每个分块帧的字节数（含17字节分块头，不超过1MB）；出站队列积压低于一个分块时才读下一块，小消息最多排在一个分块之后
+    private int streamChunkSize = Integer.getInteger("nio.client.streamChunkSize", 64 * 1024);
+    // 服务端发来的文件写到哪里，默认按文件名保存到 nio.client.fileDir 目录（默认为系统临时目录）
+    private FileReceiver fileReceiver = FileReceiver.toDirectory(
+            Paths.get(System.getProperty("nio.client.fileDir", System.getProperty("java.io.tmpdir"))));
+    // 没有对应请求的消息（如服务端主动心跳）的回调，在客户端IO线程执行
+    private Consumer<BusinessMessage> messageListener = message -> { };
+}
@@ -1,8 +1,11 @@
 package com.xiaohashu.second.NIO;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
 
 import java.nio.channels.SelectionKey;
+import java.util.function.Supplier;
 
 public enum NioConstant {
     // NIO事件类型枚举
@@ -10,8 +13,8 @@ public enum NioConstant {
     READ_EVENT(SelectionKey.OP_READ, "客户端读事件"),
     WRITE_EVENT(SelectionKey.OP_WRITE, "客户端写事件"),
 
-    // Kryo序列化类注册（类标识ID + 对应Class）
-    BUSINESS_MESSAGE(1, BusinessMessage.class, "业务消息类");
+    // Kryo序列化类注册（类标识ID + 对应Class + 手写序列化器 + 是否跟踪引用）
+    BUSINESS_MESSAGE(1, BusinessMessage.class, "业务消息类", BusinessMessageSerializer::new, false);
 
     // NIO事件相关属性
     private final int opCode;
@@ -20,6 +23,32 @@ public enum NioConstant {
     // Kryo序列化相关属性
     private final int registerId;
     private final Class<?> registerClass;
+    private final Supplier<? extends Serializer<?>> serializerFactory; // 为null时使用Kryo默认的字段序列化
+    private final boolean trackReferences; // 只有可能共享/循环引用的类才需要引用跟踪
+
+    // 注册了手写序列化器的类：协议头已能确定类型，编解码跳过类ID
+    private static final ClassValue<Boolean> FIXED_SCHEMA = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (NioConstant constant : NioConstant.values()) {
+                if (constant.registerClass == type) {
+                    return constant.serializerFactory != null;
+                }
+            }
+            return false;
+        }
+    };
+    private static final ClassValue<Boolean> TRACK_REFERENCES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (NioConstant constant : NioConstant.values()) {
+                if (constant.registerClass == type) {
+                    return constant.trackReferences;
+                }
+            }
+            return false;
+        }
+    };
 
     // NIO事件枚举构造器
     NioConstant(int opCode, String eventDesc) {
@@ -27,14 +56,19 @@ public enum NioConstant {
         this.eventDesc = eventDesc;
         this.registerId = -1;
         this.registerClass = null;
+        this.serializerFactory = null;
+        this.trackReferences = false;
     }
 
     // Kryo序列化枚举构造器
-    NioConstant(int registerId, Class<?> registerClass, String eventDesc) {
+    NioConstant(int registerId, Class<?> registerClass, String eventDesc,
+                Supplier<? extends Serializer<?>> serializerFactory, boolean trackReferences) {
         this.registerId = registerId;
         this.registerClass = registerClass;
         this.opCode = -1;
         this.eventDesc = eventDesc;
+        this.serializerFactory = serializerFactory;
+        this.trackReferences = trackReferences;
     }
 
     /**
@@ -42,12 +76,31 @@ public enum NioConstant {
      */
     public static void registerKryoClasses(Kryo kryo) {
         for (NioConstant constant : NioConstant.values()) {
-            if (constant.registerClass != null) {
+            if (constant.registerClass == null) {
+                continue;
+            }
+            if (constant.serializerFactory != null) {
+                kryo.register(constant.registerClass, constant.serializerFactory.get(), constant.registerId);
+            } else {
                 kryo.register(constant.registerClass, constant.registerId);
             }
         }
         kryo.setRegistrationRequired(true); // 强制注册，禁止动态类注册
-        kryo.setReferences(true); // 支持循环引用
+        // 引用跟踪按类开启：未声明trackReferences的类不写引用标记，也不进引用表
+        kryo.setReferenceResolver(new MapReferenceResolver() {
+            @Override
+            @SuppressWarnings("rawtypes") // Kryo的ReferenceResolver把参数声明为原始类型Class
+            public boolean useReferences(Class type) {
+                return TRACK_REFERENCES.get(type);
+            }
+        });
+    }
+
+    /**
+     * 该类是否注册了手写序列化器（协议头已标识类型时可跳过类ID）
+     */
+    public static boolean isFixedSchema(Class<?> type) {
+        return FIXED_SCHEMA.get(type);
     }
 
     // Getter方法
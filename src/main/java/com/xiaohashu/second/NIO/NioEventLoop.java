@@ -0,0 +1,311 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * worker事件循环：独占一个线程和一个Selector，负责已分配连接的读写。
+ * 每轮：按 {@link WaitStrategy} 等待就绪事件 → 处理IO → 在时间额度内执行任务队列 → 统一写出本轮的响应
+ */
+public class NioEventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private final String name;
+    private final NioEventLoopGroup parent;
+    private final NioServerConfig config;
+    private final Selector selector;
+    private final WaitStrategy waitStrategy;
+    private final EventHandler eventHandler;
+    private final HashedTimingWheel timingWheel;
+    private final IdleStateMonitor idleStateMonitor;
+    private final EventLoopMetrics metrics = new EventLoopMetrics(this);
+    private final FrameCompressor compressor; // 压缩上下文，只在本线程使用
+    // 所有连接共用的读缓冲区：读事件先读到这里，解码后只有留下半包的连接才借用自己的缓冲区
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private long currentTimeMillis = System.currentTimeMillis(); // 每轮循环刷新一次的时钟
+    private long maxLagNanos; // 上次过载检测以来的最大循环延迟
+    // 其它线程提交、等待在本线程执行的任务（连接注册、回写响应等），多生产者单消费者
+    private final MpscQueue<Runnable> taskQueue = new MpscQueue<>();
+    // 已请求唤醒、本线程尚未醒来处理：一批提交只调用一次 selector.wakeup()（系统调用）
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    public NioEventLoop(String name, NioEventLoopGroup parent, NioServerConfig config, BusinessExecutor businessExecutor,
+                        WaitStrategy waitStrategy) throws IOException {
+        this.name = name;
+        this.parent = parent;
+        this.waitStrategy = waitStrategy;
+        this.config = config;
+        this.selector = Selector.open();
+        this.timingWheel = new HashedTimingWheel(config.getTimerTickMillis(), config.getTimerWheelSize(), currentTimeMillis);
+        this.idleStateMonitor = new IdleStateMonitor(timingWheel, config);
+        this.eventHandler = new EventHandler(this, config, businessExecutor);
+        this.compressor = new FrameCompressor(config.getCompressionThreshold(), metrics);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    /**
+     * 移交新连接（任意线程调用），由本循环线程完成注册
+     */
+    public void register(SocketChannel channel) {
+        connectionCount.incrementAndGet();
+        execute(() -> registerChannel(channel));
+    }
+
+    /**
+     * 提交任务到本循环线程执行（任意线程调用）。
+     * 入队后才检查唤醒标志：本线程清除标志之后提交的任务必定触发一次唤醒，之前提交的任务会在本轮被执行
+     */
+    public void execute(Runnable task) {
+        taskQueue.offer(task);
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            waitStrategy.wakeup(selector);
+        }
+    }
+
+    /**
+     * 线程安全的发送：业务线程产生的响应交回本循环线程写出
+     */
+    public void sendMessage(ClientConnection connection, Object message) {
+        if (inEventLoop()) {
+            eventHandler.sendMessage(connection, message);
+        } else {
+            execute(() -> eventHandler.sendMessage(connection, message));
+        }
+    }
+
+    /**
+     * 线程安全的write：只入队不发送，配合 {@link #flush} 批量发送多条消息
+     */
+    public void write(ClientConnection connection, Object message) {
+        if (inEventLoop()) {
+            eventHandler.write(connection, message);
+        } else {
+            execute(() -> eventHandler.write(connection, message));
+        }
+    }
+
+    /**
+     * 线程安全的flush：发送此前write入队的消息
+     */
+    public void flush(ClientConnection connection) {
+        if (inEventLoop()) {
+            eventHandler.flush(connection);
+        } else {
+            execute(() -> eventHandler.flush(connection));
+        }
+    }
+
+    /**
+     * 线程安全地发送文件：先发文件头帧（header + 文件长度），再用 transferTo 直接把文件字节发往套接字。
+     * 文件在调用线程打开，之后由出站队列负责关闭
+     */
+    public void sendFile(ClientConnection connection, BusinessMessage header, Path path) throws IOException {
+        sendMessage(connection, FileRegion.open(header, path));
+    }
+
+    /**
+     * 线程安全地订阅主题，推送由 {@link Broadcaster#publish} 发起
+     */
+    public void subscribe(ClientConnection connection, String topic) {
+        if (inEventLoop()) {
+            eventHandler.subscribe(connection, topic);
+        } else {
+            execute(() -> eventHandler.subscribe(connection, topic));
+        }
+    }
+
+    public void unsubscribe(ClientConnection connection, String topic) {
+        if (inEventLoop()) {
+            eventHandler.unsubscribe(connection, topic);
+        } else {
+            execute(() -> eventHandler.unsubscribe(connection, topic));
+        }
+    }
+
+    /**
+     * 把已编码的帧推送给本循环的连接（topic为null表示全部连接），frame的一个引用转移给本循环
+     */
+    void fanOut(String topic, PooledByteBuffer frame) {
+        if (inEventLoop()) {
+            eventHandler.fanOut(topic, frame);
+        } else {
+            execute(() -> eventHandler.fanOut(topic, frame));
+        }
+    }
+
+    /**
+     * 线程安全地关闭连接
+     */
+    public void closeConnection(ClientConnection connection) {
+        if (inEventLoop()) {
+            eventHandler.closeConnection(connection.getKey());
+        } else {
+            execute(() -> eventHandler.closeConnection(connection.getKey()));
+        }
+    }
+
+    @Override
+    public void run() {
+        BooleanSupplier hasTasks = () -> !taskQueue.isEmpty();
+        int ioRatio = config.getIoRatio();
+        while (running) {
+            try {
+                // 时间轮非空时最多等到下一个tick
+                long timeout = timingWheel.millisToNextTick(currentTimeMillis);
+                int selected = waitStrategy.select(selector, timeout, hasTasks);
+                wakeupPending.set(false);
+                long readyNanos = System.nanoTime();
+                currentTimeMillis = System.currentTimeMillis();
+                timingWheel.advance(currentTimeMillis);
+
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    long lagNanos = System.nanoTime() - readyNanos; // 就绪到开始处理的延迟
+                    metrics.onLag(lagNanos);
+                    if (lagNanos > maxLagNanos) {
+                        maxLagNanos = lagNanos;
+                    }
+                    processKey(key);
+                }
+                // 任务时间按IO时间的比例限额，执行不完的留到下一轮（下一轮不阻塞），避免大量任务饿死IO
+                long ioNanos = System.nanoTime() - readyNanos;
+                int tasks = runAllTasks(ioRatio >= 100 ? Long.MAX_VALUE : ioNanos * (100 - ioRatio) / ioRatio);
+                metrics.onSelect(selected == 0 && tasks == 0);
+                // 本轮产生的响应统一写出
+                eventHandler.flushPending();
+            } catch (IOException e) {
+                System.err.println(name + " 事件循环异常: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // 单轮异常不结束事件循环，否则本循环上的所有连接都无人处理
+                System.err.println(name + " 事件循环异常: " + e);
+            }
+        }
+        closeSelector();
+    }
+
+    /**
+     * 执行排队的任务，超过时间额度后停止（每64个任务检查一次时间，至少执行64个）
+     */
+    private int runAllTasks(long budgetNanos) {
+        long deadline = budgetNanos == Long.MAX_VALUE ? 0 : System.nanoTime() + budgetNanos;
+        int count = 0;
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            count++;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                System.err.println(name + " 任务执行异常: " + t);
+            }
+            if ((count & 63) == 0 && deadline != 0 && System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void registerChannel(SocketChannel channel) {
+        try {
+            eventHandler.handleRegister(channel, selector);
+        } catch (IOException | RuntimeException e) {
+            // 关闭通道同时取消已注册的键
+            System.err.println(name + " 注册连接失败: " + e);
+            connectionCount.decrementAndGet();
+            closeQuietly(channel);
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isReadable()) {
+                eventHandler.handleRead(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                eventHandler.handleWrite(key);
+            }
+        } catch (IOException e) {
+            // 单个连接异常只关闭该连接，不影响同一循环上的其它连接
+            System.err.println(name + " 连接读写异常: " + e.getMessage());
+            eventHandler.closeConnection(key);
+        } catch (RuntimeException e) {
+            // 解码失败、业务执行阶段拒绝提交、接收缓冲区超限等同样只关闭该连接
+            System.err.println(name + " 连接处理异常: " + e);
+            eventHandler.closeConnection(key);
+        }
+    }
+
+    /**
+     * 取出并清零上次调用以来的最大循环延迟（过载检测周期在本线程调用）
+     */
+    long takeMaxLagNanos() {
+        long lag = maxLagNanos;
+        maxLagNanos = 0;
+        return lag;
+    }
+
+    /**
+     * 连接关闭回调（由EventHandler在本循环线程调用）
+     */
+    void onConnectionClosed() {
+        connectionCount.decrementAndGet();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly((SocketChannel) key.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 关闭失败无需处理
+        }
+    }
+
+    public String getName() { return name; }
+    public NioEventLoopGroup parent() { return parent; }
+    public Broadcaster getBroadcaster() { return parent.getBroadcaster(); }
+    public NioServerConfig getConfig() { return config; }
+    public Selector getSelector() { return selector; }
+    public int getConnectionCount() { return connectionCount.get(); }
+    public IdleStateMonitor getIdleStateMonitor() { return idleStateMonitor; }
+    public EventLoopMetrics getMetrics() { return metrics; }
+    public FrameCompressor getCompressor() { return compressor; }
+    ByteBuffer getReadBuffer() { return readBuffer; }
+    HashedTimingWheel getTimingWheel() { return timingWheel; }
+    public int getTaskQueueSize() { return taskQueue.size(); }
+    public long currentTimeMillis() { return currentTimeMillis; }
+    public boolean inEventLoop() { return Thread.currentThread() == thread; }
+}
@@ -0,0 +1,89 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * worker事件循环组：按配置的策略把新连接分配给其中一个循环
+ */
+public class NioEventLoopGroup {
+    private final NioEventLoop[] eventLoops;
+    private final WorkerChooserStrategy chooserStrategy;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final Broadcaster broadcaster;
+    private final ConnectionRegistry connectionRegistry = new ConnectionRegistry(); // 所有循环共用一个ID空间
+    private final ExecutorService streamWriter; // 流数据写出线程，所有循环共用，首次提交时才创建线程
+
+    public NioEventLoopGroup(NioServerConfig config, BusinessExecutor businessExecutor) throws IOException {
+        int threads = config.getWorkerThreads();
+        if (threads <= 0) {
+            throw new IllegalArgumentException("worker线程数必须大于0: " + threads);
+        }
+        if (config.getIoRatio() <= 0 || config.getIoRatio() > 100) {
+            throw new IllegalArgumentException("ioRatio必须在1~100之间: " + config.getIoRatio());
+        }
+        this.chooserStrategy = config.getChooserStrategy();
+        AtomicInteger writerIndex = new AtomicInteger();
+        this.streamWriter = Executors.newFixedThreadPool(Math.max(1, config.getStreamWriterThreads()), r -> {
+            Thread thread = new Thread(r, "nio-stream-writer-" + writerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.eventLoops = new NioEventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            eventLoops[i] = new NioEventLoop("nio-worker-" + i, this, config, businessExecutor,
+                    config.waitStrategyType(i).newStrategy(config));
+        }
+        this.broadcaster = new Broadcaster(eventLoops);
+    }
+
+    public void start() {
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    /**
+     * 选择下一个接收新连接的事件循环
+     */
+    public NioEventLoop next() {
+        if (chooserStrategy == WorkerChooserStrategy.LEAST_CONNECTIONS) {
+            NioEventLoop least = eventLoops[0];
+            for (int i = 1; i < eventLoops.length; i++) {
+                if (eventLoops[i].getConnectionCount() < least.getConnectionCount()) {
+                    least = eventLoops[i];
+                }
+            }
+            return least;
+        }
+        return eventLoops[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    /**
+     * 按连接ID发送消息（任意线程调用）：查注册表得到连接，交给其所属事件循环编码写出
+     *
+     * @return ID已失效（连接已关闭）时返回false
+     */
+    public boolean send(long connectionId, Object message) {
+        ClientConnection connection = connectionRegistry.get(connectionId);
+        if (connection == null) {
+            return false;
+        }
+        connection.getEventLoop().sendMessage(connection, message);
+        return true;
+    }
+
+    public void shutdown() {
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        streamWriter.shutdown(); // 已排队的写出继续完成
+    }
+
+    public NioEventLoop[] getEventLoops() { return eventLoops; }
+    public Broadcaster getBroadcaster() { return broadcaster; }
+    public ConnectionRegistry getConnectionRegistry() { return connectionRegistry; }
+    ExecutorService getStreamWriter() { return streamWriter; }
+}
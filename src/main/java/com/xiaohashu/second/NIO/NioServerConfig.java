@@ -0,0 +1,97 @@
+package com.xiaohashu.second.NIO;
+
+import lombok.Data;
+
+import java.nio.file.Paths;
+
+/**
+ * 服务端配置：默认值可通过 -Dnio.xxx 系统属性覆盖
+ */
+@Data
+public class NioServerConfig {
+    private int port = Integer.getInteger("nio.port", 9000);
+    // 接收器数量：大于1时每个接收器一个 SO_REUSEPORT 监听通道 + 一个线程，由内核在它们之间分配新连接
+    private int acceptorThreads = Integer.getInteger("nio.acceptors", 1);
+    // 每次唤醒最多连续accept多少个连接
+    private int acceptBudget = Integer.getInteger("nio.acceptBudget", 64);
+    // 每个监听通道的accept队列长度（0表示使用JDK默认值50）
+    private int acceptBacklog = Integer.getInteger("nio.backlog", 1024);
+    // 连接选项：禁用Nagle算法，收发缓冲区大小（0表示使用系统默认值）
+    private boolean tcpNoDelay = Boolean.parseBoolean(System.getProperty("nio.tcpNoDelay", "true"));
+    private int receiveBufferSize = Integer.getInteger("nio.soRcvbuf", 0);
+    private int sendBufferSize = Integer.getInteger("nio.soSndbuf", 0);
+    // worker事件循环数量，默认等于CPU核数
+    private int workerThreads = Integer.getInteger("nio.workerThreads", Runtime.getRuntime().availableProcessors());
+    // 新连接分配到worker的策略
+    private WorkerChooserStrategy chooserStrategy =
+            WorkerChooserStrategy.valueOf(System.getProperty("nio.chooserStrategy", WorkerChooserStrategy.ROUND_ROBIN.name()));
+    // 业务执行阶段线程模型及固定线程池大小
+    private BusinessExecutorType businessExecutorType =
+            BusinessExecutorType.valueOf(System.getProperty("nio.businessExecutor", BusinessExecutorType.FIXED.name()));
+    private int businessThreads = Integer.getInteger("nio.businessThreads", Runtime.getRuntime().availableProcessors() * 2);
+    private BusinessHandler businessHandler = new DefaultBusinessHandler();
+    // 心跳请求由解码器直接用预编码模板应答，不进入业务处理器
+    private boolean heartbeatFastPath = Boolean.parseBoolean(System.getProperty("nio.heartbeatFastPath", "true"));
+    // 消息体达到多少字节时用LZ4压缩（0表示不压缩），解码端总是识别压缩帧
+    private int compressionThreshold = Integer.getInteger("nio.compressionThreshold", 0);
+    // 分块流的接收目标：设置了 nio.streamDir 时保存为该目录下的文件，否则拒绝；每个连接同时进行的流数上限
+    private StreamHandler streamHandler = System.getProperty("nio.streamDir") == null
+            ? StreamHandler.REJECT : StreamHandler.toDirectory(Paths.get(System.getProperty("nio.streamDir")));
+    private int maxStreamsPerConnection = Integer.getInteger("nio.maxStreamsPerConnection", 4);
+    // 流数据交给专用的写出线程（写文件等阻塞操作不占用事件循环）；每个连接已收到、尚未写出的流数据（字节）
+    // 超过上限时暂停读取该连接，回落到一半以下恢复
+    private int streamWriterThreads = Integer.getInteger("nio.streamWriterThreads", 1);
+    private int maxStreamPendingBytes = Integer.getInteger("nio.maxStreamPendingBytes", 1024 * 1024);
+    // 每个新连接的处理器流水线初始化，默认为Kryo解码器+编码器
+    private PipelineInitializer pipelineInitializer = PipelineInitializer.DEFAULT;
+    // 连接出站队列高/低水位线（字节）：超过高水位线暂停读取该连接，回落到低水位线以下恢复
+    private int writeBufferHighWaterMark = Integer.getInteger("nio.writeBufferHighWaterMark", 64 * 1024);
+    private int writeBufferLowWaterMark = Integer.getInteger("nio.writeBufferLowWaterMark", 32 * 1024);
+    // 连接级限流（0表示不限）：每个连接每秒最多处理多少条消息、最多积攒多少令牌（0表示等于速率），
+    // 超出的消息回繁忙帧，并暂停读取该连接直到令牌恢复（精度为时间轮tick）
+    private int connectionRateLimit = Integer.getInteger("nio.admission.connectionRate", 0);
+    private int connectionBurst = Integer.getInteger("nio.admission.connectionBurst", 0);
+    // 按消息类型限流，格式 类型:每秒条数，逗号分隔，如 2:5000,6:100；速率是整个服务端的，按worker数均分，
+    // 各事件循环最多积攒100ms的令牌，超出的消息回繁忙帧
+    private String typeRateLimits = System.getProperty("nio.admission.typeRates", "");
+    // 过载检测（阈值为0表示不按该指标检测）：每个周期内事件循环最大延迟或业务阶段队列深度达到阈值即为过载
+    private long overloadCheckMillis = Long.getLong("nio.overload.checkMillis", 100L);
+    private long overloadLagMillis = Long.getLong("nio.overload.lagMillis", 0L);
+    private int overloadQueueDepth = Integer.getInteger("nio.overload.queueDepth", 0);
+    // 过载分级处理：每个周期暂停读取负载最重的N个连接；持续超过rejectAfter后对高负载连接回繁忙帧；
+    // 持续超过disconnectAfter后每个周期断开N个被暂停的连接
+    private int overloadShedConnections = Integer.getInteger("nio.overload.shedConnections", 4);
+    private long overloadRejectAfterMillis = Long.getLong("nio.overload.rejectAfterMillis", 500L);
+    private long overloadDisconnectAfterMillis = Long.getLong("nio.overload.disconnectAfterMillis", 5000L);
+    // 广播/主题推送：慢订阅方的处理策略，以及BUFFER/DISCONNECT策略下单个连接允许积压的字节数
+    private SlowSubscriberPolicy slowSubscriberPolicy = SlowSubscriberPolicy.valueOf(
+            System.getProperty("nio.broadcast.slowSubscriberPolicy", SlowSubscriberPolicy.BUFFER.name()));
+    private int broadcastMaxPendingBytes = Integer.getInteger("nio.broadcast.maxPendingBytes", 4 * 1024 * 1024);
+    // 空闲检测（毫秒，0表示不检测）：读空闲、写空闲、读写都空闲
+    private long readerIdleMillis = Long.getLong("nio.readerIdleMillis", 0L);
+    private long writerIdleMillis = Long.getLong("nio.writerIdleMillis", 0L);
+    private long allIdleMillis = Long.getLong("nio.allIdleMillis", 300000L); // 默认5分钟
+    private IdleStateHandler idleStateHandler = new DefaultIdleStateHandler();
+    // 事件循环时间轮：tick间隔（毫秒）和槽位数（2的幂）
+    private long timerTickMillis = Long.getLong("nio.timerTickMillis", 100L);
+    private int timerWheelSize = Integer.getInteger("nio.timerWheelSize", 512);
+    // 事件循环等待策略；逗号分隔时按worker下标依次指定，不足的沿用最后一个，如 BUSY_SPIN,BLOCKING
+    private String waitStrategy = System.getProperty("nio.waitStrategy", WaitStrategyType.BLOCKING.name());
+    // 自适应策略：连续空轮询多少次后开始让出CPU，再多少次后阻塞
+    private int adaptiveSpins = Integer.getInteger("nio.adaptive.spins", 1000);
+    private int adaptiveYields = Integer.getInteger("nio.adaptive.yields", 100);
+    // 每轮循环中IO处理时间的占比（1~100）：任务最多执行 IO时间*(100-ioRatio)/ioRatio，100表示每轮执行完所有任务
+    private int ioRatio = Integer.getInteger("nio.ioRatio", 50);
+    // 阶段统计和事件循环指标快照的打印间隔（毫秒），0表示不打印
+    private long statsIntervalMillis = Long.getLong("nio.statsIntervalMillis", 0L);
+    // 是否把各事件循环的指标注册为JMX MBean
+    private boolean jmxEnabled = Boolean.parseBoolean(System.getProperty("nio.jmxEnabled", "true"));
+
+    /**
+     * 第loopIndex个worker事件循环的等待策略
+     */
+    public WaitStrategyType waitStrategyType(int loopIndex) {
+        String[] types = waitStrategy.split(",");
+        return WaitStrategyType.valueOf(types[Math.min(loopIndex, types.length - 1)].trim());
+    }
+}
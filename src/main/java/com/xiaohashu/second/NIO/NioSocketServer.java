@@ -1,122 +1,225 @@
 package com.xiaohashu.second.NIO;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * 主从Reactor服务器：接收器（boss）只负责accept，连接按策略移交给N个worker事件循环处理读写。
+ * 配置多个接收器时各自用 SO_REUSEPORT 监听同一端口：第一个在调用 {@link #start} 的线程上运行，其余各占一个线程
+ */
 public class NioSocketServer {
-    private static final int DEFAULT_PORT = 9000;
-    private static final int BUFFER_SIZE = 1024;
-    private Selector selector;
-    private ServerSocketChannel serverChannel;
-    private volatile boolean running = false;
+    private final NioServerConfig config;
+    private final List<NioAcceptor> acceptors = new CopyOnWriteArrayList<>(); // stop可能由关闭钩子线程调用
+    private NioEventLoopGroup workerGroup;
+    private BusinessExecutor businessExecutor;
+    private final List<ObjectName> mbeanNames = new ArrayList<>();
+    private long lastStatsTime;
 
-    private static final EventHandler eventHandler = new EventHandler();
-    private final Map<SocketChannel, ClientConnection> connections = new ConcurrentHashMap<>();
+    public NioSocketServer() {
+        this(new NioServerConfig());
+    }
+
+    public NioSocketServer(NioServerConfig config) {
+        this.config = config;
+    }
 
     public void start() throws IOException {
-        start(DEFAULT_PORT);
+        start(config.getPort());
     }
 
     public void start(int port) throws IOException {
-        // 初始化Selector和服务端通道
-        selector = Selector.open();
-        serverChannel = ServerSocketChannel.open();
-        serverChannel.configureBlocking(false);
-        serverChannel.bind(new InetSocketAddress(port));
+        // 先启动worker事件循环，再开始接收连接
+        businessExecutor = new BusinessExecutor(config.getBusinessExecutorType(), config.getBusinessThreads(),
+                config.getBusinessHandler());
+        workerGroup = new NioEventLoopGroup(config, businessExecutor);
+        workerGroup.start();
+        if (config.isJmxEnabled()) {
+            registerMBeans(port);
+        }
 
-        // 注册ACCEPT事件（使用枚举的OP_CODE）
-        serverChannel.register(selector, NioConstant.ACCEPT_EVENT.getOpCode());
-        running = true;
-        System.out.println("NIO服务器启动，监听端口: " + port);
+        openAcceptors(port);
+        System.out.println("NIO服务器启动，监听端口: " + getLocalPort() + "，接收器数: " + acceptors.size()
+                + "，worker线程数: " + config.getWorkerThreads()
+                + "，分配策略: " + config.getChooserStrategy().getDesc()
+                + "，业务执行: " + businessExecutor.getType().getDesc()
+                + "，等待策略: " + config.getWaitStrategy());
 
-        eventLoop();
+        // 额外的接收器各占一个线程，第一个接收器占用当前线程（阻塞到stop）
+        for (int i = 1; i < acceptors.size(); i++) {
+            Thread thread = new Thread(acceptors.get(i), acceptors.get(i).getName());
+            thread.start();
+        }
+        acceptors.get(0).run();
     }
 
-    private void eventLoop() {
-        while (running) {
-            try {
-                // 阻塞等待事件（超时1秒）
-                int readyChannels = selector.select(1000);
-                if (readyChannels == 0) {
-                    handleTimeout(); // 超时处理（心跳检测）
-                    continue;
+    /**
+     * 打开监听通道：多接收器时全部开启 SO_REUSEPORT 并绑定第一个通道实际拿到的端口（port为0时也一致），
+     * 平台不支持 SO_REUSEPORT 时退回单接收器
+     */
+    private void openAcceptors(int port) throws IOException {
+        int count = config.getAcceptorThreads();
+        if (count <= 0) {
+            throw new IllegalArgumentException("接收器数量必须大于0: " + count);
+        }
+        boolean reusePort = count > 1;
+        if (reusePort) {
+            try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+                if (NioAcceptor.reusePortOption(probe) == null) {
+                    System.err.println("当前平台不支持SO_REUSEPORT，退回单接收器");
+                    count = 1;
+                    reusePort = false;
                 }
+            }
+        }
+        try {
+            int boundPort = port;
+            for (int i = 0; i < count; i++) {
+                ServerSocketChannel channel = NioAcceptor.openServerChannel(config, boundPort, reusePort);
+                boundPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+                // 第一个接收器顺带打印统计
+                acceptors.add(new NioAcceptor("nio-acceptor-" + i, channel, workerGroup, config.getAcceptBudget(),
+                        i == 0 ? this::reportStats : null));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAcceptors();
+            throw e;
+        }
+    }
 
-                // 处理就绪事件
-                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                while (keyIterator.hasNext()) {
-                    SelectionKey key = keyIterator.next();
-                    keyIterator.remove(); // 避免重复处理
-
-                    if (!key.isValid()) {
-                        continue;
-                    }
-
-                    // 基于枚举分发事件
-                    if (key.isAcceptable()) {
-                        eventHandler.handleAccept(key);
-                    } else if (key.isReadable()) {
-                        eventHandler.handleRead(key);
-                    } else if (key.isWritable()) {
-                        eventHandler.handleWrite(key);
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println("事件循环异常: " + e.getMessage());
-                break;
+    private void closeAcceptors() {
+        for (NioAcceptor acceptor : acceptors) {
+            acceptor.shutdown();
+        }
+        acceptors.clear();
+    }
+
+    /**
+     * 实际监听的端口（配置端口为0时由系统分配），未启动时返回-1
+     */
+    public int getLocalPort() {
+        if (acceptors.isEmpty()) {
+            return -1;
+        }
+        try {
+            return ((InetSocketAddress) acceptors.get(0).getServerChannel().getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 按配置间隔打印各处理阶段的队列深度和耗时
+     */
+    private void reportStats() {
+        long interval = config.getStatsIntervalMillis();
+        long now = System.currentTimeMillis();
+        if (interval > 0 && now - lastStatsTime >= interval) {
+            lastStatsTime = now;
+            System.out.println(businessExecutor.getMetrics());
+            for (MetricsSnapshot snapshot : snapshotMetrics()) {
+                System.out.println(snapshot);
             }
         }
     }
 
     /**
-     * 超时处理：清理超时连接
+     * 生成各worker事件循环自上次快照以来的区间指标
      */
-    private void handleTimeout() {
-        long currentTime = System.currentTimeMillis();
-        connections.entrySet().removeIf(entry -> {
-            ClientConnection conn = entry.getValue();
-            if (currentTime - conn.getLastActiveTime() > 300000) { // 5分钟超时
-                try {
-                    entry.getKey().close();
-                    System.out.println("清理超时连接: " + entry.getKey().getRemoteAddress());
-                    return true;
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return true;
-                }
+    public List<MetricsSnapshot> snapshotMetrics() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>();
+        if (workerGroup != null) {
+            for (NioEventLoop eventLoop : workerGroup.getEventLoops()) {
+                snapshots.add(eventLoop.getMetrics().snapshot());
             }
-            return false;
-        });
+        }
+        return snapshots;
     }
 
     /**
-     * 停止服务器
+     * 注册MBean：com.xiaohashu.second.NIO:type=EventLoop,port=端口,name=循环名
      */
-    public void stop() {
-        running = false;
-        if (selector != null) {
-            selector.wakeup();
+    private void registerMBeans(int port) {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (NioEventLoop eventLoop : workerGroup.getEventLoops()) {
             try {
-                serverChannel.close();
-                selector.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                ObjectName name = new ObjectName("com.xiaohashu.second.NIO:type=EventLoop,port=" + port
+                        + ",name=" + eventLoop.getName());
+                mbeanServer.registerMBean(eventLoop.getMetrics(), name);
+                mbeanNames.add(name);
+            } catch (JMException e) {
+                System.err.println("注册MBean失败: " + e.getMessage());
             }
         }
     }
 
+    private void unregisterMBeans() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : mbeanNames) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("注销MBean失败: " + e.getMessage());
+            }
+        }
+        mbeanNames.clear();
+    }
+
+    /**
+     * 停止服务器
+     */
+    public void stop() {
+        closeAcceptors();
+        if (workerGroup != null) {
+            unregisterMBeans();
+            workerGroup.shutdown();
+        }
+        if (businessExecutor != null) {
+            businessExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 广播/主题推送入口，服务器启动后可用
+     */
+    public Broadcaster getBroadcaster() {
+        if (workerGroup == null) {
+            throw new IllegalStateException("服务器尚未启动");
+        }
+        return workerGroup.getBroadcaster();
+    }
+
+    /**
+     * 按连接ID发送消息（任意线程调用），业务代码只需保存 {@link ClientConnection#getId()}
+     *
+     * @return 连接已关闭时返回false
+     */
+    public boolean send(long connectionId, Object message) {
+        if (workerGroup == null) {
+            throw new IllegalStateException("服务器尚未启动");
+        }
+        return workerGroup.send(connectionId, message);
+    }
+
+    /**
+     * 按连接ID查找连接，已关闭时返回null
+     */
+    public ClientConnection getConnection(long connectionId) {
+        return workerGroup == null ? null : workerGroup.getConnectionRegistry().get(connectionId);
+    }
+
     public static void main(String[] args) throws IOException {
         NioSocketServer server = new NioSocketServer();
-        server.start();
-
-        // 优雅关闭
+        // 优雅关闭（start会阻塞在boss事件循环，需先注册钩子）
         Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+
+        server.start();
     }
-}
\ No newline at end of file
+}
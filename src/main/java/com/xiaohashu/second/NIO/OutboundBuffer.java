@@ -0,0 +1,190 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 连接的出站队列：按帧排队的池化缓冲区（读模式）和文件区域 {@link FileRegion}。
+ * <ul>
+ *     <li>write：只入队，不触发发送；flush：把此前入队的帧标记为可发送</li>
+ *     <li>发送时把已flush的连续帧聚合为 ByteBuffer[]，一次 {@link GatheringByteChannel#write(ByteBuffer[], int, int)} 写出多帧；
+ *     轮到文件区域时用 transferTo 直接从文件发送，写了一部分时记住进度，下次可写时接着发</li>
+ *     <li>内存中的帧字节数超过高水位线时变为不可写，回落到低水位线以下才恢复可写；文件区域不占内存，不计入水位线</li>
+ *     <li>环形数组在第一帧入队时才分配，队列写空后归还，空闲连接不持有数组</li>
+ * </ul>
+ * 仅在所属事件循环线程访问。
+ */
+public class OutboundBuffer {
+    // 单次聚合写的最大缓冲区个数（Linux IOV_MAX为1024）
+    static final int MAX_GATHER = 1024;
+    // 一次写事件内最多循环写入的次数，避免单个连接霸占事件循环
+    private static final int WRITE_SPIN_COUNT = 16;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final Object[] EMPTY = new Object[0];
+
+    // 环形数组存放排队的帧（PooledByteBuffer或FileRegion），遍历和出入队都不产生对象分配
+    private Object[] frames = EMPTY;
+    private int head;
+    private int size;
+    private final int highWaterMark;
+    private final int lowWaterMark;
+    private int flushedCount;   // 队首起已flush、可发送的帧数
+    private long pendingBytes;  // 队列中尚未写出的字节数（含文件区域）
+    private long pendingFileBytes; // 其中文件区域尚未发送的字节数
+    private boolean writable = true;
+
+    public OutboundBuffer(int highWaterMark, int lowWaterMark) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("低水位线不能大于高水位线: " + lowWaterMark + " > " + highWaterMark);
+        }
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    /**
+     * 入队一帧（读模式），所有权转移给出站队列，写出后自动release
+     */
+    public void write(PooledByteBuffer frame) {
+        add(frame);
+        pendingBytes += frame.buffer().remaining();
+        if (writable && pendingBytes - pendingFileBytes > highWaterMark) {
+            writable = false;
+        }
+    }
+
+    /**
+     * 入队一个文件区域，所有权转移给出站队列，发送完或连接关闭时release
+     */
+    public void write(FileRegion region) {
+        add(region);
+        pendingBytes += region.remaining();
+        pendingFileBytes += region.remaining();
+    }
+
+    private void add(Object frame) {
+        if (size == frames.length) {
+            grow();
+        }
+        frames[(head + size++) & (frames.length - 1)] = frame;
+    }
+
+    /**
+     * 标记当前所有已入队的帧为可发送
+     */
+    public void flush() {
+        flushedCount = size;
+    }
+
+    /**
+     * 把已flush的帧聚合写入通道，直到写完、通道写满或达到自旋次数
+     *
+     * @param scratch 事件循环复用的聚合数组，长度至少为 {@link #MAX_GATHER}
+     * @return 写完所有已flush的帧返回true；false表示内核发送缓冲区已满，需等待OP_WRITE
+     */
+    public boolean writeTo(GatheringByteChannel channel, ByteBuffer[] scratch) throws IOException {
+        for (int spin = 0; spin < WRITE_SPIN_COUNT && flushedCount > 0; spin++) {
+            if (frames[head] instanceof FileRegion) {
+                if (!transferFileRegion(channel)) {
+                    return false;
+                }
+                continue;
+            }
+            int limit = Math.min(flushedCount, scratch.length);
+            int mask = frames.length - 1;
+            int count = 0;
+            for (Object frame; count < limit && (frame = frames[(head + count) & mask]) instanceof PooledByteBuffer; count++) {
+                scratch[count] = ((PooledByteBuffer) frame).buffer(); // 聚合到下一个文件区域为止
+            }
+            long written = channel.write(scratch, 0, count);
+            for (int i = 0; i < count; i++) {
+                scratch[i] = null; // 不持有已归还缓冲区的引用
+            }
+            if (written <= 0) {
+                return false;
+            }
+            pendingBytes -= written;
+            removeWrittenFrames();
+            if (!writable && pendingBytes - pendingFileBytes < lowWaterMark) {
+                writable = true;
+            }
+        }
+        if (size == 0) {
+            frames = EMPTY;
+            head = 0;
+        }
+        return flushedCount == 0;
+    }
+
+    /**
+     * 从队首的文件区域发送一段（Linux上为sendfile，数据不经过用户态）
+     *
+     * @return 是否有进展；false表示内核发送缓冲区已满
+     */
+    private boolean transferFileRegion(WritableByteChannel channel) throws IOException {
+        FileRegion region = (FileRegion) frames[head];
+        long written = region.transferTo(channel);
+        pendingBytes -= written;
+        pendingFileBytes -= written;
+        if (region.remaining() == 0) {
+            pollFirst();
+            region.release();
+            flushedCount--;
+            return true;
+        }
+        return written > 0;
+    }
+
+    private void removeWrittenFrames() {
+        Object frame;
+        while (flushedCount > 0 && (frame = frames[head]) instanceof PooledByteBuffer
+                && !((PooledByteBuffer) frame).buffer().hasRemaining()) {
+            pollFirst();
+            ((PooledByteBuffer) frame).release();
+            flushedCount--;
+        }
+    }
+
+    private Object pollFirst() {
+        Object frame = frames[head];
+        frames[head] = null;
+        head = (head + 1) & (frames.length - 1);
+        size--;
+        return frame;
+    }
+
+    private void grow() {
+        Object[] larger = new Object[frames.length == 0 ? INITIAL_CAPACITY : frames.length << 1];
+        for (int i = 0; i < size; i++) {
+            larger[i] = frames[(head + i) & (frames.length - 1)];
+        }
+        frames = larger;
+        head = 0;
+    }
+
+    /**
+     * 连接关闭时释放所有未写出的帧
+     */
+    public void releaseAll() {
+        while (size > 0) {
+            Object frame = pollFirst();
+            if (frame instanceof FileRegion) {
+                ((FileRegion) frame).release();
+            } else {
+                ((PooledByteBuffer) frame).release();
+            }
+        }
+        frames = EMPTY;
+        head = 0;
+        flushedCount = 0;
+        pendingBytes = 0;
+        pendingFileBytes = 0;
+    }
+
+    public boolean isWritable() { return writable; }
+    public boolean hasFlushed() { return flushedCount > 0; }
+    public long getPendingBytes() { return pendingBytes; }
+    public int size() { return size; }
+}
@@ -0,0 +1,11 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 出站处理器：写出的消息从流水线尾部反向经过各出站处理器，
+ * 处理器通过 {@link HandlerContext#write(Object)} 传给前一个，到达头部时必须已编码为 {@link PooledByteBuffer}。
+ * 在所属事件循环线程调用。
+ */
+public interface OutboundHandler {
+
+    void write(HandlerContext ctx, Object msg) throws Exception;
+}
@@ -0,0 +1,17 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 新连接的流水线初始化：在所属事件循环线程为每个连接调用一次，
+ * 可添加共享（{@link Sharable}）处理器，也可为该连接new独占的处理器实例
+ */
+public interface PipelineInitializer {
+
+    /**
+     * 默认流水线：长度前缀Kryo解码器 + 编码器
+     */
+    PipelineInitializer DEFAULT = pipeline -> pipeline
+            .addLast(ChannelPipeline.DECODER, KryoDecoderHandler.INSTANCE)
+            .addLast(ChannelPipeline.ENCODER, KryoEncoderHandler.INSTANCE);
+
+    void initPipeline(ChannelPipeline pipeline);
+}
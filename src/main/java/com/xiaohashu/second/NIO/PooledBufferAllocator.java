@@ -0,0 +1,215 @@
+package com.xiaohashu.second.NIO;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 直接内存缓冲池：按2的幂划分规格（256B ~ 2MB），分配优先走线程本地缓存，
+ * 其次走全局共享池，都没有时才真正分配直接内存。超出最大规格的请求不池化。
+ * <p>
+ * -Dnio.buffer.leakDetection=true 开启泄漏检测：记录每次分配的调用栈，
+ * 缓冲区未release就被GC回收时打印分配位置。
+ */
+public class PooledBufferAllocator {
+    private static final int MIN_SIZE_SHIFT = 8;   // 256B
+    private static final int MAX_SIZE_SHIFT = 21;  // 2MB
+    private static final int SIZE_CLASS_COUNT = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+    // 每个线程每个规格最多缓存的字节数
+    private static final int THREAD_CACHE_BYTES = Integer.getInteger("nio.buffer.threadCacheBytes", 1024 * 1024);
+    private static final int THREAD_CACHE_MAX_COUNT = Integer.getInteger("nio.buffer.threadCacheCount", 64);
+    // 全局共享池每个规格最多缓存的字节数
+    private static final long SHARED_POOL_BYTES = Long.getLong("nio.buffer.sharedPoolBytes", 16L * 1024 * 1024);
+    private static final boolean LEAK_DETECTION = Boolean.getBoolean("nio.buffer.leakDetection");
+
+    private static volatile PooledBufferAllocator instance;
+
+    private final Queue<PooledByteBuffer>[] sharedPools;
+    private final AtomicInteger[] sharedPoolCounts;
+    private final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+    private final LongAdder directAllocations = new LongAdder();
+
+    // 泄漏检测
+    private final ReferenceQueue<PooledByteBuffer> leakQueue = new ReferenceQueue<>();
+    private final Set<LeakTracker> liveTrackers = ConcurrentHashMap.newKeySet();
+    private final LongAdder leakCount = new LongAdder();
+
+    private PooledBufferAllocator() {
+        // 不能直接创建泛型数组：按通配符类型创建后转换，数组只在这里填入 PooledByteBuffer 队列
+        @SuppressWarnings("unchecked")
+        Queue<PooledByteBuffer>[] pools = (Queue<PooledByteBuffer>[]) new Queue<?>[SIZE_CLASS_COUNT];
+        sharedPools = pools;
+        sharedPoolCounts = new AtomicInteger[SIZE_CLASS_COUNT];
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            sharedPools[i] = new ConcurrentLinkedQueue<>();
+            sharedPoolCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static PooledBufferAllocator getInstance() {
+        if (instance == null) {
+            synchronized (PooledBufferAllocator.class) {
+                if (instance == null) {
+                    instance = new PooledBufferAllocator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 分配容量至少为minCapacity的缓冲区，position=0，limit=capacity，引用计数为1
+     */
+    public PooledByteBuffer allocate(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("缓冲区容量不能为负数: " + minCapacity);
+        }
+        int sizeClass = sizeClassIndex(minCapacity);
+        PooledByteBuffer buf;
+        if (sizeClass < 0) {
+            buf = newBuffer(minCapacity, -1);
+        } else {
+            buf = threadCache.get().pop(sizeClass);
+            if (buf == null) {
+                buf = sharedPools[sizeClass].poll();
+                if (buf != null) {
+                    sharedPoolCounts[sizeClass].decrementAndGet();
+                } else {
+                    buf = newBuffer(1 << (sizeClass + MIN_SIZE_SHIFT), sizeClass);
+                }
+            }
+        }
+        buf.init();
+        if (LEAK_DETECTION) {
+            track(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * 引用计数归零后由 {@link PooledByteBuffer#release()} 调用
+     */
+    void recycle(PooledByteBuffer buf) {
+        if (buf.leakTracker != null) {
+            untrack(buf);
+        }
+        int sizeClass = buf.sizeClass();
+        if (sizeClass < 0) {
+            return; // 非池化缓冲区交给GC回收
+        }
+        if (threadCache.get().push(buf)) {
+            return;
+        }
+        int maxShared = (int) Math.max(1, SHARED_POOL_BYTES >> (sizeClass + MIN_SIZE_SHIFT));
+        if (sharedPoolCounts[sizeClass].incrementAndGet() <= maxShared) {
+            sharedPools[sizeClass].offer(buf);
+        } else {
+            sharedPoolCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    private PooledByteBuffer newBuffer(int capacity, int sizeClass) {
+        directAllocations.increment();
+        return new PooledByteBuffer(ByteBuffer.allocateDirect(capacity), this, sizeClass);
+    }
+
+    static int sizeClassIndex(int capacity) {
+        if (capacity <= (1 << MIN_SIZE_SHIFT)) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+    }
+
+    /**
+     * 真正向系统申请直接内存的次数，稳态下应不再增长
+     */
+    public long getDirectAllocations() {
+        return directAllocations.sum();
+    }
+
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    private void track(PooledByteBuffer buf) {
+        reportLeaks();
+        LeakTracker tracker = new LeakTracker(buf, leakQueue);
+        liveTrackers.add(tracker);
+        buf.leakTracker = tracker;
+    }
+
+    private void untrack(PooledByteBuffer buf) {
+        LeakTracker tracker = (LeakTracker) buf.leakTracker;
+        buf.leakTracker = null;
+        liveTrackers.remove(tracker);
+        tracker.clear();
+    }
+
+    private void reportLeaks() {
+        LeakTracker tracker;
+        while ((tracker = (LeakTracker) leakQueue.poll()) != null) {
+            if (liveTrackers.remove(tracker)) {
+                leakCount.increment();
+                System.err.println("检测到缓冲区泄漏（未release即被GC回收），容量: " + tracker.capacity);
+                tracker.allocationSite.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 线程本地缓存：每个规格一个数组栈，无锁
+     */
+    private static final class ThreadCache {
+        private final PooledByteBuffer[][] stacks = new PooledByteBuffer[SIZE_CLASS_COUNT][];
+        private final int[] sizes = new int[SIZE_CLASS_COUNT];
+
+        ThreadCache() {
+            for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+                int byBytes = THREAD_CACHE_BYTES >> (i + MIN_SIZE_SHIFT);
+                stacks[i] = new PooledByteBuffer[Math.max(1, Math.min(THREAD_CACHE_MAX_COUNT, byBytes))];
+            }
+        }
+
+        PooledByteBuffer pop(int sizeClass) {
+            int size = sizes[sizeClass];
+            if (size == 0) {
+                return null;
+            }
+            PooledByteBuffer[] stack = stacks[sizeClass];
+            PooledByteBuffer buf = stack[--size];
+            stack[size] = null;
+            sizes[sizeClass] = size;
+            return buf;
+        }
+
+        boolean push(PooledByteBuffer buf) {
+            int sizeClass = buf.sizeClass();
+            PooledByteBuffer[] stack = stacks[sizeClass];
+            int size = sizes[sizeClass];
+            if (size == stack.length) {
+                return false;
+            }
+            stack[size] = buf;
+            sizes[sizeClass] = size + 1;
+            return true;
+        }
+    }
+
+    private static final class LeakTracker extends PhantomReference<PooledByteBuffer> {
+        private final Throwable allocationSite;
+        private final int capacity;
+
+        LeakTracker(PooledByteBuffer referent, ReferenceQueue<PooledByteBuffer> queue) {
+            super(referent, queue);
+            this.allocationSite = new Throwable("缓冲区分配位置");
+            this.capacity = referent.capacity();
+        }
+    }
+}
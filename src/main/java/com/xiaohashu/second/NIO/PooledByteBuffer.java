@@ -0,0 +1,102 @@
+package com.xiaohashu.second.NIO;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 池化的直接内存缓冲区：引用计数归零时自动归还到 {@link PooledBufferAllocator}。
+ * 持有方用完必须调用 {@link #release()}，传递给其它持有方前先 {@link #retain()}。
+ * {@link #duplicate()} 得到共享内存、独立读写位置的视图，视图释放时释放一次原缓冲区。
+ */
+public final class PooledByteBuffer {
+    private static final AtomicIntegerFieldUpdater<PooledByteBuffer> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuffer.class, "refCnt");
+
+    private final ByteBuffer buffer;
+    private final PooledBufferAllocator allocator;
+    private final int sizeClass; // 所属规格下标，-1表示超出规格的非池化缓冲区
+    private final PooledByteBuffer parent; // 视图对应的原缓冲区，非视图为null
+    private volatile int refCnt;
+    Object leakTracker;          // 泄漏检测开启时的追踪器
+
+    PooledByteBuffer(ByteBuffer buffer, PooledBufferAllocator allocator, int sizeClass) {
+        this.buffer = buffer;
+        this.allocator = allocator;
+        this.sizeClass = sizeClass;
+        this.parent = null;
+    }
+
+    private PooledByteBuffer(ByteBuffer buffer, PooledByteBuffer parent) {
+        this.buffer = buffer;
+        this.allocator = parent.allocator;
+        this.sizeClass = -1;
+        this.parent = parent;
+        this.refCnt = 1;
+    }
+
+    /**
+     * 从池中取出时重置状态
+     */
+    void init() {
+        buffer.clear();
+        refCnt = 1;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 只读视图：共享同一块内存，position/limit独立（从当前状态复制），持有原缓冲区一个引用。
+     * 用于把同一个已编码帧放进多个连接的出站队列，各自记录写出进度
+     */
+    public PooledByteBuffer duplicate() {
+        retain();
+        return new PooledByteBuffer(buffer.asReadOnlyBuffer(), this);
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    public PooledByteBuffer retain() {
+        for (;;) {
+            int current = refCnt;
+            if (current <= 0) {
+                throw new IllegalStateException("缓冲区已释放，不能再retain");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 引用计数减一，归零时归还池
+     *
+     * @return 是否已归还
+     */
+    public boolean release() {
+        int current = REF_CNT_UPDATER.decrementAndGet(this);
+        if (current == 0) {
+            if (parent != null) {
+                parent.release();
+            } else {
+                allocator.recycle(this);
+            }
+            return true;
+        }
+        if (current < 0) {
+            throw new IllegalStateException("缓冲区重复释放");
+        }
+        return false;
+    }
+
+    int sizeClass() {
+        return sizeClass;
+    }
+}
@@ -0,0 +1,69 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 串行执行器：提交到同一实例的任务在共享线程池上按提交顺序逐个执行，
+ * 任意时刻最多占用一个线程。每个连接一个实例，从而保证同一连接的消息有序。
+ */
+public class SerialExecutor implements Executor, Runnable {
+    // 单次调度最多执行的任务数，避免一个繁忙连接长期霸占线程
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @throws RejectedExecutionException 线程池拒绝调度（如已关闭）时，本任务不会执行，之后的提交仍可重新调度
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        try {
+            schedule();
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            throw e;
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false); // 否则标记一直为true，之后的任务只入队不调度
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            Runnable task;
+            for (int i = 0; i < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    System.err.println("业务任务执行异常: " + t);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // 释放标记后再检查一次，防止与并发提交交错导致任务滞留
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.xiaohashu.second.NIO;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记无连接状态、可同时加入多个连接流水线的处理器；未标记的处理器实例只能属于一个流水线
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Sharable {
+}
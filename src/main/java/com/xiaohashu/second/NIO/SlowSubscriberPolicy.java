@@ -0,0 +1,20 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 广播/主题推送遇到消费过慢（出站队列积压）的连接时的处理策略
+ */
+public enum SlowSubscriberPolicy {
+    DROP("出站队列超过高水位线时丢弃本条推送"),
+    BUFFER("积压到上限前继续排队，超过上限丢弃本条推送"),
+    DISCONNECT("积压超过上限时断开连接");
+
+    private final String desc;
+
+    SlowSubscriberPolicy(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -0,0 +1,75 @@
+package com.xiaohashu.second.NIO;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 处理阶段统计：排队深度、排队耗时、执行耗时
+ */
+public class StageMetrics {
+    private final String name;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalRunNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    public void onSubmit() {
+        submitted.increment();
+    }
+
+    /**
+     * @param submitNanos 提交时间
+     * @param startNanos  开始执行时间
+     * @param endNanos    执行结束时间
+     */
+    public void onComplete(long submitNanos, long startNanos, long endNanos) {
+        completed.increment();
+        totalWaitNanos.add(startNanos - submitNanos);
+        totalRunNanos.add(endNanos - startNanos);
+        long latency = endNanos - submitNanos;
+        long max;
+        while (latency > (max = maxLatencyNanos.get())) {
+            if (maxLatencyNanos.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    public String getName() { return name; }
+    public long getSubmitted() { return submitted.sum(); }
+    public long getCompleted() { return completed.sum(); }
+
+    /**
+     * 当前排队+执行中的任务数
+     */
+    public long getQueueDepth() {
+        return Math.max(0, submitted.sum() - completed.sum());
+    }
+
+    public long getAvgWaitMicros() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / count);
+    }
+
+    public long getAvgRunMicros() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRunNanos.sum() / count);
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "[" + name + "] 已提交: " + getSubmitted() + "，已完成: " + getCompleted()
+                + "，队列深度: " + getQueueDepth() + "，平均排队: " + getAvgWaitMicros() + "us"
+                + "，平均执行: " + getAvgRunMicros() + "us，最大延迟: " + getMaxLatencyMicros() + "us";
+    }
+}
@@ -0,0 +1,40 @@
+package com.xiaohashu.second.NIO;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 解码出的流分块：超过单帧上限的大消息由发送端拆成有界的分块帧，和其它帧交错发送，按流ID归属到同一个流。
+ * <ul>
+ *     <li>{@link #START}：流开始，携带描述本流的消息（流ID即其消息ID）</li>
+ *     <li>{@link #DATA}：一段数据，{@link #getData()} 直接指向接收缓冲区，只在本次回调内有效</li>
+ *     <li>{@link #END}：数据发送完毕；{@link #ABORT}：发送端中止（如读取数据源失败）</li>
+ * </ul>
+ */
+public final class StreamChunk {
+    public static final byte START = 0;
+    public static final byte DATA = 1;
+    public static final byte END = 2;
+    public static final byte ABORT = 3;
+
+    private final long streamId;
+    private final byte kind;
+    private final int messageType;
+    private final BusinessMessage header;
+    private final ByteBuffer data;
+
+    StreamChunk(long streamId, byte kind, int messageType, BusinessMessage header, ByteBuffer data) {
+        this.streamId = streamId;
+        this.kind = kind;
+        this.messageType = messageType;
+        this.header = header;
+        this.data = data;
+    }
+
+    public long getStreamId() { return streamId; }
+    public byte getKind() { return kind; }
+    public int getMessageType() { return messageType; }
+    /** 仅START分块有值 */
+    public BusinessMessage getHeader() { return header; }
+    /** 本分块的数据（读模式），不要在回调外持有 */
+    public ByteBuffer getData() { return data; }
+}
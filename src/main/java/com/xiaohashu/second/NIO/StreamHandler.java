@@ -0,0 +1,93 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 服务端流接收：收到流的开始分块时（所属事件循环线程）决定数据交给谁。
+ * 分块数据逐块拷贝后交给流写出线程上的 {@link StreamSink}，不在内存中拼接整条消息；
+ * 每个连接尚未写出的数据超过 nio.maxStreamPendingBytes 时暂停读取该连接，内存占用有上限。
+ * 流正常结束、数据全部写出后，开始分块携带的消息进入业务执行阶段，业务处理器可按其消息ID应答发送方。
+ */
+public interface StreamHandler {
+
+    /**
+     * 拒绝所有流：数据丢弃，不交给业务处理器
+     */
+    StreamHandler REJECT = (connection, header) -> null;
+
+    /**
+     * 在连接所属的事件循环线程调用，不要阻塞
+     *
+     * @return 接收本流数据的目标，返回null表示拒绝（数据丢弃，不交给业务处理器）
+     */
+    StreamSink open(ClientConnection connection, BusinessMessage header) throws IOException;
+
+    /**
+     * 一个流的数据目标：所有回调都在流写出线程按分块顺序执行，同一个流的回调不会并发，可以阻塞（如写文件）
+     */
+    interface StreamSink {
+        /**
+         * @param data 本分块的数据（读模式），只在本次调用内有效
+         */
+        void onData(ByteBuffer data) throws IOException;
+
+        void onEnd() throws IOException;
+
+        /**
+         * 发送端中止、连接关闭或处理失败，之后不再有回调
+         */
+        void onAbort();
+    }
+
+    /**
+     * 按开始消息的content作为文件名（只取最后一段，防止路径穿越）保存到目录下，已存在则覆盖；中止时删除不完整的文件。
+     * 文件在写出线程上第一次收到数据（或结束）时才打开，打开和截断不占用事件循环
+     */
+    static StreamHandler toDirectory(Path directory) {
+        return (connection, header) -> {
+            Path path = directory.resolve(FileReceiver.fileName(header));
+            return new StreamSink() {
+                private FileChannel file;
+
+                private FileChannel file() throws IOException {
+                    if (file == null) {
+                        file = FileChannel.open(path,
+                                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    }
+                    return file;
+                }
+
+                @Override
+                public void onData(ByteBuffer data) throws IOException {
+                    FileChannel file = file();
+                    while (data.hasRemaining()) {
+                        file.write(data);
+                    }
+                }
+
+                @Override
+                public void onEnd() throws IOException {
+                    file().close(); // 没有数据的流也生成（空）文件
+                }
+
+                @Override
+                public void onAbort() {
+                    if (file == null) {
+                        return; // 还没打开过，原有文件保持不变
+                    }
+                    try {
+                        file.close();
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        System.err.println("清理未完成的流文件失败: " + e.getMessage());
+                    }
+                }
+            };
+        };
+    }
+}
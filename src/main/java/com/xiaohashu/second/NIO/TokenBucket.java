@@ -0,0 +1,53 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 令牌桶（单线程使用）：按固定速率补充令牌，最多积攒burst个。
+ * 补充在取令牌时按流逝时间一次算出，不需要定时任务；时间取事件循环每轮刷新的时钟
+ */
+final class TokenBucket {
+    private final double tokensPerMilli;
+    private final double burst;
+    private double tokens;
+    private long lastRefillMillis;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param burst         最多积攒的令牌数（至少1），初始为满
+     */
+    TokenBucket(double ratePerSecond, double burst, long nowMillis) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("令牌速率必须大于0: " + ratePerSecond);
+        }
+        this.tokensPerMilli = ratePerSecond / 1000;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillMillis = nowMillis;
+    }
+
+    /**
+     * 取一个令牌，没有令牌时返回false
+     */
+    boolean tryAcquire(long nowMillis) {
+        refill(nowMillis);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距下一个令牌可用的毫秒数，已有令牌时为0
+     */
+    long millisUntilAvailable(long nowMillis) {
+        refill(nowMillis);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerMilli);
+    }
+
+    private void refill(long nowMillis) {
+        if (nowMillis > lastRefillMillis) {
+            tokens = Math.min(burst, tokens + (nowMillis - lastRefillMillis) * tokensPerMilli);
+            lastRefillMillis = nowMillis;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.xiaohashu.second.NIO;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 事件循环的等待策略：没有就绪事件时如何等待，以及其它线程提交任务时如何叫醒循环。
+ * 每个事件循环持有自己的实例（自适应策略有状态），只在循环线程调用 {@link #select}。
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待就绪事件
+     *
+     * @param timeoutMillis 最多等待多久（时间轮下一个tick），小于0表示没有定时任务
+     * @param hasTasks      任务队列是否非空
+     * @return 就绪键数量
+     */
+    int select(Selector selector, long timeoutMillis, BooleanSupplier hasTasks) throws IOException;
+
+    /**
+     * 其它线程提交任务后叫醒循环（同一批提交只调用一次）
+     */
+    void wakeup(Selector selector);
+
+    /**
+     * 阻塞select：空闲不占CPU，唤醒延迟为一次 epoll_wait 返回 + 线程调度
+     */
+    final class Blocking implements WaitStrategy {
+        @Override
+        public int select(Selector selector, long timeoutMillis, BooleanSupplier hasTasks) throws IOException {
+            if (hasTasks.getAsBoolean()) {
+                return selector.selectNow(); // 有待执行任务时不阻塞
+            }
+            return selector.select(timeoutMillis < 0 ? 1000 : Math.max(1, timeoutMillis));
+        }
+
+        @Override
+        public void wakeup(Selector selector) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * selectNow忙轮询：独占一个核，就绪事件和新任务都在下一次轮询时处理，没有线程调度延迟；
+     * 循环从不阻塞，提交任务无需唤醒
+     */
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public int select(Selector selector, long timeoutMillis, BooleanSupplier hasTasks) throws IOException {
+            return selector.selectNow();
+        }
+
+        @Override
+        public void wakeup(Selector selector) {
+            // 循环不会阻塞
+        }
+    }
+
+    /**
+     * 自适应退避：连续空轮询先忙轮询spins次，再每次轮询前 Thread.yield() yields次，之后退到阻塞select（park），
+     * 直到出现就绪事件或任务再回到忙轮询。负载高时延迟接近忙轮询，空闲时不占CPU。
+     * <p>
+     * 唤醒请求总是先记录下来：退避阶段收到的请求不调用 selector.wakeup()，但会让下一次阻塞变成selectNow。
+     * 事件循环每批提交只唤醒一次，若请求因循环没有阻塞而被丢弃，同一批后续（还没链接进队列的）提交者不会再唤醒，
+     * 循环可能带着已提交的任务阻塞到超时。阻塞前先发布parked标志再检查请求和任务队列，提交方记录请求后再读标志，
+     * 两边至少有一方看到对方，任务不会被错过。
+     */
+    final class Adaptive implements WaitStrategy {
+        private final int spins;
+        private final int yields;
+        private int idleCount;
+        private volatile boolean parked;
+        private volatile boolean wakeupRequested; // 尚未被阻塞前检查消费的唤醒请求
+
+        public Adaptive(int spins, int yields) {
+            this.spins = spins;
+            this.yields = yields;
+        }
+
+        @Override
+        public int select(Selector selector, long timeoutMillis, BooleanSupplier hasTasks) throws IOException {
+            if (hasTasks.getAsBoolean()) {
+                idleCount = 0;
+                return selector.selectNow();
+            }
+            int selected;
+            if (idleCount < spins) {
+                selected = selector.selectNow();
+            } else if (idleCount < spins + yields) {
+                Thread.yield();
+                selected = selector.selectNow();
+            } else {
+                parked = true;
+                try {
+                    if (wakeupRequested || hasTasks.getAsBoolean()) {
+                        wakeupRequested = false;
+                        selected = selector.selectNow();
+                    } else {
+                        selected = selector.select(timeoutMillis < 0 ? 1000 : Math.max(1, timeoutMillis));
+                    }
+                } finally {
+                    parked = false;
+                }
+            }
+            if (selected > 0) {
+                idleCount = 0;
+            } else if (idleCount < Integer.MAX_VALUE) {
+                idleCount++;
+            }
+            return selected;
+        }
+
+        @Override
+        public void wakeup(Selector selector) {
+            wakeupRequested = true;
+            if (parked) {
+                selector.wakeup(); // 退避阶段的循环会在阻塞前看到请求
+            }
+        }
+    }
+}
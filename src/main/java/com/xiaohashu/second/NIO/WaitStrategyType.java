@@ -0,0 +1,31 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 事件循环等待策略，见 {@link WaitStrategy}
+ */
+public enum WaitStrategyType {
+    BLOCKING("阻塞select"),
+    BUSY_SPIN("selectNow忙轮询"),
+    ADAPTIVE("自旋-让出-阻塞自适应");
+
+    private final String desc;
+
+    WaitStrategyType(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public WaitStrategy newStrategy(NioServerConfig config) {
+        switch (this) {
+            case BUSY_SPIN:
+                return new WaitStrategy.BusySpin();
+            case ADAPTIVE:
+                return new WaitStrategy.Adaptive(config.getAdaptiveSpins(), config.getAdaptiveYields());
+            default:
+                return new WaitStrategy.Blocking();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.xiaohashu.second.NIO;
+
+/**
+ * 新连接分配到worker事件循环的策略
+ */
+public enum WorkerChooserStrategy {
+    ROUND_ROBIN("轮询分配"),
+    LEAST_CONNECTIONS("最少连接数优先");
+
+    private final String desc;
+
+    WorkerChooserStrategy(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
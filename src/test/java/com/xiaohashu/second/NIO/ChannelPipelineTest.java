@@ -0,0 +1,220 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChannelPipelineTest {
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private NioEventLoopGroup group;
+
+    @After
+    public void cleanUp() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+        if (group != null) {
+            group.shutdown();
+        }
+    }
+
+    @Test
+    public void failingInitializerClosesTheConnectionAndReleasesItsCount() throws Exception {
+        // 非@Sharable处理器被所有连接复用：第一个连接正常，第二个连接初始化失败
+        InboundHandler shared = (ctx, msg) -> ctx.fireRead(msg);
+        NioEventLoop loop = startLoop(pipeline -> pipeline
+                .addLast("shared", shared)
+                .addLast(ChannelPipeline.DECODER, KryoDecoderHandler.INSTANCE)
+                .addLast(ChannelPipeline.ENCODER, KryoEncoderHandler.INSTANCE));
+        ServerSocketChannel listener = listen();
+
+        SocketChannel first = connect(listener, loop);
+        SocketChannel second = connect(listener, loop);
+        assertClosedByServer(second);
+        waitForConnectionCount(loop, 1);
+
+        first.close();
+        waitForConnectionCount(loop, 0);
+    }
+
+    @Test
+    public void handlerExceptionOnTheGenericPathClosesTheConnection() throws Exception {
+        InboundHandler failing = new FailingHandler();
+        NioEventLoop loop = startLoop(pipeline -> pipeline
+                .addLast("failing", failing)
+                .addLast(ChannelPipeline.DECODER, KryoDecoderHandler.INSTANCE)
+                .addLast(ChannelPipeline.ENCODER, KryoEncoderHandler.INSTANCE), null);
+        ServerSocketChannel listener = listen();
+
+        SocketChannel client = connect(listener, loop);
+        send(client, new BusinessMessage(1, "触发异常", 0, 2));
+        assertClosedByServer(client);
+        waitForConnectionCount(loop, 0);
+    }
+
+    @Test
+    public void exceptionBelowTheDecoderClosesTheConnectionOnBothPaths() throws Exception {
+        PipelineInitializer[] initializers = {
+                PipelineInitializer.DEFAULT,
+                pipeline -> pipeline
+                        .addLast("passThrough", PassThroughHandler.INSTANCE)
+                        .addLast(ChannelPipeline.DECODER, KryoDecoderHandler.INSTANCE)
+                        .addLast(ChannelPipeline.ENCODER, KryoEncoderHandler.INSTANCE)
+        };
+        for (PipelineInitializer initializer : initializers) {
+            // 业务线程池已关闭：分发时抛出RejectedExecutionException
+            NioServerConfig config = new NioServerConfig();
+            BusinessExecutor stopped = new BusinessExecutor(BusinessExecutorType.FIXED, 1, config.getBusinessHandler());
+            stopped.shutdown();
+            NioEventLoop loop = startLoop(initializer, stopped);
+            ServerSocketChannel listener = listen();
+
+            SocketChannel client = connect(listener, loop);
+            send(client, new BusinessMessage(2, "被拒绝", 0, 2));
+            assertClosedByServer(client);
+            waitForConnectionCount(loop, 0);
+            group.shutdown();
+            group = null;
+        }
+    }
+
+    @Test
+    public void streamChunkDispatchFailureIsNotSwallowedAsADecodeFailure() throws Exception {
+        NioServerConfig config = config(PipelineInitializer.DEFAULT);
+        config.setStreamHandler((connection, header) -> new DiscardingSink());
+        NioEventLoop loop = startLoop(config, null);
+        // 流写出线程池已关闭：结束分块提交写出任务时抛出RejectedExecutionException
+        group.getStreamWriter().shutdown();
+        ServerSocketChannel listener = listen();
+
+        SocketChannel client = connect(listener, loop);
+        KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+        write(client, encoder.encodeStreamStart(new BusinessMessage(3, "流", 0, 2)));
+        write(client, encoder.encodeStreamControl(2, 3, StreamChunk.END));
+        assertClosedByServer(client);
+        waitForConnectionCount(loop, 0);
+    }
+
+    NioEventLoop startLoop(PipelineInitializer initializer) throws IOException {
+        return startLoop(initializer, null);
+    }
+
+    NioEventLoop startLoop(PipelineInitializer initializer, BusinessExecutor businessExecutor) throws IOException {
+        return startLoop(config(initializer), businessExecutor);
+    }
+
+    static NioServerConfig config(PipelineInitializer initializer) {
+        NioServerConfig config = new NioServerConfig();
+        config.setWorkerThreads(1);
+        config.setJmxEnabled(false);
+        config.setBusinessHandler(new EchoBusinessHandler());
+        config.setPipelineInitializer(initializer);
+        return config;
+    }
+
+    NioEventLoop startLoop(NioServerConfig config, BusinessExecutor businessExecutor) throws IOException {
+        group = new NioEventLoopGroup(config, businessExecutor != null ? businessExecutor
+                : new BusinessExecutor(BusinessExecutorType.INLINE, 0, config.getBusinessHandler()));
+        group.start();
+        return group.getEventLoops()[0];
+    }
+
+    ServerSocketChannel listen() throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress("127.0.0.1", 0));
+        resources.add(listener);
+        return listener;
+    }
+
+    /**
+     * 建立一个回环连接，服务端一侧交给事件循环，返回客户端一侧（阻塞模式）
+     */
+    SocketChannel connect(ServerSocketChannel listener, NioEventLoop loop) throws IOException {
+        SocketChannel client = SocketChannel.open(listener.getLocalAddress());
+        resources.add(client);
+        loop.register(listener.accept());
+        return client;
+    }
+
+    static void send(SocketChannel client, BusinessMessage message) throws IOException {
+        write(client, new KryoProtocolEncoder().encode(message));
+    }
+
+    static void write(SocketChannel client, PooledByteBuffer frame) throws IOException {
+        try {
+            while (frame.buffer().hasRemaining()) {
+                client.write(frame.buffer());
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    static void assertClosedByServer(SocketChannel client) throws IOException, InterruptedException {
+        client.configureBlocking(false);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            buffer.clear(); // 丢弃关闭前发来的数据
+            try {
+                if (client.read(buffer) < 0) {
+                    return;
+                }
+            } catch (IOException e) {
+                return; // 服务端带着未读数据关闭时客户端收到RST
+            }
+            Thread.sleep(10);
+        }
+        fail("服务端没有关闭连接");
+    }
+
+    static void waitForConnectionCount(NioEventLoop loop, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loop.getConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, loop.getConnectionCount());
+    }
+
+    private static final class FailingHandler implements InboundHandler {
+        @Override
+        public void channelRead(HandlerContext ctx, Object msg) {
+            throw new IllegalStateException("处理器故障");
+        }
+    }
+
+    private static final class DiscardingSink implements StreamHandler.StreamSink {
+        @Override
+        public void onData(ByteBuffer data) {
+            data.position(data.limit());
+        }
+
+        @Override
+        public void onEnd() {
+        }
+
+        @Override
+        public void onAbort() {
+        }
+    }
+
+    @Sharable
+    private static final class PassThroughHandler implements InboundHandler {
+        static final PassThroughHandler INSTANCE = new PassThroughHandler();
+
+        @Override
+        public void channelRead(HandlerContext ctx, Object msg) {
+            ctx.fireRead(msg);
+        }
+    }
+}
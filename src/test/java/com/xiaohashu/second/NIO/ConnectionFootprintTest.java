@@ -0,0 +1,173 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 空闲连接内存测试：在本进程内建立N个回环连接，比较GC后的堆内存和直接内存，算出每个空闲连接的服务端开销，
+ * 并断言不超过上限（连接退回到预分配读写缓冲区等情况会让构建失败）。
+ * <ol>
+ *     <li>基准：普通阻塞 ServerSocketChannel 接收N个连接，两端都只持有JDK的SocketChannel</li>
+ *     <li>内置 NioSocketServer 接收N个连接，每个连接完成一次心跳往返（走过一次读写路径）后保持空闲</li>
+ * </ol>
+ * 两次的差值除以N即本框架（连接状态、流水线、出站队列、空闲检测节点、Selector注册）的每连接开销；
+ * 再加上基准中服务端那一半的SocketChannel，就是服务端每个空闲连接的总开销。
+ * <p>
+ * 默认只建立2000个连接；每个连接占两个文件描述符，且单个源地址只有约2.8万个临时端口，
+ * 客户端按每2万个连接换一个源地址（127.0.0.x）。例如测10万连接：
+ * <pre>
+ * ulimit -n 250000
+ * mvn test -Dtest=ConnectionFootprintTest -Dfootprint.connections=100000 -DargLine=-Xmx2g
+ * </pre>
+ */
+public class ConnectionFootprintTest {
+    private static final int CONNECTIONS = Integer.getInteger("footprint.connections", 2000);
+    private static final int CONNECTIONS_PER_SOURCE_ADDRESS = 20000;
+    // 实测约1.2KB堆内存、0直接内存；预分配8KB读缓冲区时直接内存约8KB/连接
+    private static final long MAX_HEAP_PER_CONNECTION = 4 * 1024;
+    private static final long MAX_DIRECT_PER_CONNECTION = 1024;
+
+    @Test
+    public void idleConnectionStaysWithinMemoryBudget() throws Exception {
+        Usage baseline = measure(ConnectionFootprintTest::jdkOnly);
+        Usage server = measure(ConnectionFootprintTest::nioServer);
+        double jdkPair = (double) baseline.heap / CONNECTIONS;
+        double framework = (double) (server.heap - baseline.heap) / CONNECTIONS;
+        double heapPerConnection = framework + jdkPair / 2;
+        double directPerConnection = (double) (server.direct - baseline.direct) / CONNECTIONS;
+        System.out.printf("连接数=%d，JDK连接对（客户端+服务端SocketChannel）: %.0f B/连接，框架+Selector注册: %.0f B/连接%n",
+                CONNECTIONS, jdkPair, framework);
+        System.out.printf("服务端每个空闲连接（估算，含服务端一半的SocketChannel）: %.0f B 堆内存, %.0f B 直接内存%n",
+                heapPerConnection, directPerConnection);
+
+        assertTrue("每连接堆内存超出上限: " + heapPerConnection, heapPerConnection < MAX_HEAP_PER_CONNECTION);
+        assertTrue("每连接直接内存超出上限: " + directPerConnection, directPerConnection < MAX_DIRECT_PER_CONNECTION);
+    }
+
+    private interface Scenario {
+        /**
+         * 建立连接，返回需要在测量后关闭的资源
+         */
+        AutoCloseable open(List<SocketChannel> clients) throws Exception;
+    }
+
+    private static final class Usage {
+        final long heap;
+        final long direct;
+
+        Usage(long heap, long direct) {
+            this.heap = heap;
+            this.direct = direct;
+        }
+    }
+
+    /**
+     * 测量场景建立连接前后的堆内存和直接内存增量
+     */
+    private static Usage measure(Scenario scenario) throws Exception {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        List<SocketChannel> clients = new ArrayList<>(CONNECTIONS);
+        AutoCloseable resources = scenario.open(clients);
+        Usage usage = new Usage(usedHeap() - heapBefore, usedDirect() - directBefore);
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        resources.close();
+        return usage;
+    }
+
+    private static AutoCloseable jdkOnly(List<SocketChannel> clients) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(0), CONNECTIONS);
+        int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        List<SocketChannel> accepted = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            clients.add(connect(i, port));
+            accepted.add(serverChannel.accept());
+        }
+        return () -> {
+            for (SocketChannel channel : accepted) {
+                channel.close();
+            }
+            serverChannel.close();
+        };
+    }
+
+    private static AutoCloseable nioServer(List<SocketChannel> clients) throws Exception {
+        NioServerConfig config = new NioServerConfig();
+        config.setPort(0);
+        config.setAcceptBacklog(CONNECTIONS);
+        config.setBusinessHandler(new EchoBusinessHandler());
+        config.setJmxEnabled(false);
+        NioSocketServer server = new NioSocketServer(config);
+        Thread boss = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("内置服务端启动失败: " + e.getMessage());
+            }
+        }, "footprint-server");
+        boss.setDaemon(true);
+        boss.start();
+        while (server.getLocalPort() < 0) {
+            Thread.sleep(10);
+        }
+        int port = server.getLocalPort();
+
+        ByteBuffer request = ByteBuffer.allocate(HeartbeatCodec.frameLength());
+        ByteBuffer response = ByteBuffer.allocate(HeartbeatCodec.frameLength());
+        for (int i = 0; i < CONNECTIONS; i++) {
+            SocketChannel client = connect(i, port);
+            clients.add(client);
+            request.clear();
+            HeartbeatCodec.encodeRequest(request, i, System.currentTimeMillis());
+            request.flip();
+            while (request.hasRemaining()) {
+                client.write(request);
+            }
+            response.clear();
+            while (response.hasRemaining()) {
+                if (client.read(response) < 0) {
+                    throw new IOException("连接被服务端关闭: " + i);
+                }
+            }
+        }
+        return server::stop;
+    }
+
+    private static SocketChannel connect(int index, int targetPort) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0." + (1 + index / CONNECTIONS_PER_SOURCE_ADDRESS), 0));
+        channel.connect(new InetSocketAddress("127.0.0.1", targetPort));
+        return channel;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConnectionRegistryTest {
+    private static NioEventLoop eventLoop;
+
+    private final ConnectionRegistry registry = new ConnectionRegistry();
+
+    @BeforeClass
+    public static void createEventLoop() throws Exception {
+        // 只用来给连接提供时钟，不启动
+        NioServerConfig config = new NioServerConfig();
+        eventLoop = new NioEventLoop("registry-test", null, config,
+                new BusinessExecutor(BusinessExecutorType.INLINE, 0, config.getBusinessHandler()),
+                new WaitStrategy.Blocking());
+    }
+
+    @Test
+    public void registeredConnectionIsFoundById() {
+        ClientConnection a = newConnection();
+        ClientConnection b = newConnection();
+        long idA = registry.register(a);
+        long idB = registry.register(b);
+        assertNotEquals(0, idA);
+        assertNotEquals(idA, idB);
+        assertEquals(idA, a.getId());
+        assertSame(a, registry.get(idA));
+        assertSame(b, registry.get(idB));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void reusedSlotGetsANewGenerationAndTheOldIdFindsNothing() {
+        ClientConnection old = newConnection();
+        long oldId = registry.register(old);
+        registry.unregister(old);
+        assertNull(registry.get(oldId));
+        assertEquals(0, registry.size());
+
+        ClientConnection fresh = newConnection();
+        long freshId = registry.register(fresh);
+        assertEquals("槽位应被复用", (int) oldId, (int) freshId);
+        assertEquals((oldId >>> 32) + 1, freshId >>> 32);
+        assertNull("旧ID不能查到新连接", registry.get(oldId));
+        assertSame(fresh, registry.get(freshId));
+
+        // 旧连接重复注销不影响占用同一槽位的新连接
+        registry.unregister(old);
+        assertSame(fresh, registry.get(freshId));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void slotsBeyondTheFirstPageAreAllocatedOnDemand() {
+        List<ClientConnection> connections = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ClientConnection connection = newConnection();
+            connections.add(connection);
+            ids.add(registry.register(connection));
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            assertSame(connections.get(i), registry.get(ids.get(i)));
+        }
+        for (int i = 0; i < connections.size(); i += 2) {
+            registry.unregister(connections.get(i));
+        }
+        assertEquals(5_000, registry.size());
+        for (int i = 0; i < connections.size(); i++) {
+            assertEquals(i % 2 == 0 ? null : connections.get(i), registry.get(ids.get(i)));
+        }
+    }
+
+    @Test
+    public void unknownIdsFindNothing() {
+        registry.register(newConnection());
+        assertNull(registry.get(0));
+        assertNull(registry.get(-1));
+        assertNull(registry.get(1L << 32 | 4095)); // 已分配页中未使用的槽位
+        assertNull(registry.get(1L << 32 | 1_000_000)); // 未分配的页
+    }
+
+    private static ClientConnection newConnection() {
+        return new ClientConnection(null, eventLoop, null);
+    }
+}
@@ -0,0 +1,114 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FrameCompressorTest {
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+
+    @Test
+    public void compressedBodyRoundTrips() {
+        PooledByteBuffer frame = encoder.encode(new BusinessMessage(1, repeat("往返", 500), 0, 2));
+        byte[] body = body(frame.buffer(), 8);
+        PooledByteBuffer compressed = new FrameCompressor(64, null).compress(frame);
+        assertNotSame(frame, compressed);
+
+        PooledByteBuffer restored = FrameCompressor.decompress(compressedBody(compressed));
+        assertEquals(body.length, restored.buffer().remaining());
+        assertEquals(ByteBuffer.wrap(body), restored.buffer());
+        restored.release();
+        compressed.release();
+    }
+
+    @Test
+    public void smallOrIncompressibleFramesAreLeftAlone() {
+        FrameCompressor compressor = new FrameCompressor(64, null);
+        PooledByteBuffer small = encoder.encode(new BusinessMessage(1, "短", 0, 2));
+        assertSame(small, compressor.compress(small));
+        small.release();
+
+        PooledByteBuffer disabled = encoder.encode(new BusinessMessage(2, repeat("a", 500), 0, 2));
+        assertSame(disabled, new FrameCompressor(0, null).compress(disabled));
+        disabled.release();
+    }
+
+    @Test
+    public void corruptedBlockIsRejected() {
+        ByteBuffer body = compressedBody(new FrameCompressor(64, null).compress(
+                encoder.encode(new BusinessMessage(1, repeat("损坏", 300), 0, 2))));
+        for (int i = body.position() + 4; i < body.limit(); i++) {
+            body.put(i, (byte) 0xFF);
+        }
+        assertRejected(body);
+    }
+
+    @Test
+    public void originalLengthThatDoesNotMatchTheBlockIsRejected() {
+        PooledByteBuffer compressed = new FrameCompressor(64, null).compress(
+                encoder.encode(new BusinessMessage(1, repeat("长度", 300), 0, 2)));
+        ByteBuffer body = compressedBody(compressed);
+        int originalLength = body.getInt(body.position());
+
+        // 声明得比实际长：解压结果不足原始长度
+        body.putInt(body.position(), originalLength + 16);
+        assertRejected(body);
+        // 声明得比实际短：目标空间不够，安全解压器不会越界写
+        body.putInt(body.position(), originalLength - 16);
+        assertRejected(body);
+        // 截断LZ4块：安全解压器不会读出压缩数据之外
+        body.putInt(body.position(), originalLength);
+        body.limit(body.limit() - 8);
+        assertRejected(body);
+        compressed.release();
+    }
+
+    @Test
+    public void invalidOriginalLengthIsRejected() {
+        assertRejected(ByteBuffer.allocate(2));
+        assertRejected(ByteBuffer.allocate(8).putInt(0, 0));
+        assertRejected(ByteBuffer.allocate(8).putInt(0, KryoProtocolDecoder.MAX_MESSAGE_LENGTH + 1));
+    }
+
+    private static void assertRejected(ByteBuffer body) {
+        try {
+            FrameCompressor.decompress(body).release();
+            fail("损坏的压缩帧应被拒绝");
+        } catch (IllegalArgumentException expected) {
+            // 预期
+        }
+    }
+
+    /**
+     * 压缩帧中 原始长度 + LZ4块 部分
+     */
+    private static ByteBuffer compressedBody(PooledByteBuffer compressed) {
+        ByteBuffer frame = compressed.buffer();
+        assertEquals(KryoProtocolDecoder.FLAG_COMPRESSED,
+                frame.getInt(frame.position() + 4) & KryoProtocolDecoder.FLAG_COMPRESSED);
+        ByteBuffer body = frame.duplicate();
+        body.position(frame.position() + 8);
+        return body;
+    }
+
+    private static byte[] body(ByteBuffer frame, int offset) {
+        ByteBuffer copy = frame.duplicate();
+        copy.position(copy.position() + offset);
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
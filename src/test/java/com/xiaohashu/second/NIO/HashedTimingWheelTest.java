@@ -0,0 +1,138 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedTimingWheelTest {
+    private static final long START = 1_000_000L;
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8; // 一圈80ms
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel(TICK, WHEEL_SIZE, START);
+    private final List<Long> fired = new ArrayList<>();
+
+    @Test
+    public void firesOnTheFirstTickAtOrAfterTheDeadline() {
+        Recording timeout = new Recording();
+        wheel.schedule(timeout, START + 25);
+        assertEquals(1, wheel.size());
+        wheel.advance(START + 20);
+        assertTrue(fired.isEmpty());
+        wheel.advance(START + 30);
+        assertEquals(1, fired.size());
+        assertFalse(timeout.isScheduled());
+        assertEquals(0, wheel.size());
+        assertEquals(-1, wheel.millisToNextTick(START + 30));
+    }
+
+    @Test
+    public void deadlinesBeyondOneRotationWaitForTheirRound() {
+        wheel.schedule(new Recording(), START + 205); // 与 START+45 落在同一槽位
+        wheel.advance(START + 50);
+        wheel.advance(START + 130);
+        assertTrue(fired.isEmpty());
+        wheel.advance(START + 210);
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void advancingMoreThanOneRotationFiresEverythingDue() {
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(new Recording(), START + i * 15);
+        }
+        wheel.schedule(new Recording(), START + 1000);
+        wheel.advance(START + 500); // 落后六圈，每个槽位只扫描一次
+        assertEquals(20, fired.size());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverFire() {
+        Recording kept = new Recording();
+        Recording cancelled = new Recording();
+        wheel.schedule(kept, START + 30);
+        wheel.schedule(cancelled, START + 30);
+        wheel.cancel(cancelled);
+        wheel.cancel(cancelled); // 重复取消无副作用
+        assertFalse(cancelled.isScheduled());
+        assertEquals(1, wheel.size());
+        wheel.advance(START + 40);
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void timeoutCancelledByAnotherCallbackInTheSameAdvanceDoesNotFire() {
+        // 两个节点同时到期且互相取消：先触发的一个取消另一个，只能触发一次
+        CancellingTimeout first = new CancellingTimeout();
+        CancellingTimeout second = new CancellingTimeout();
+        first.other = second;
+        second.other = first;
+        wheel.schedule(first, START + 20);
+        wheel.schedule(second, START + 30);
+        wheel.advance(START + 40);
+        assertEquals(1, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void rescheduleMovesAPendingTimeout() {
+        Recording timeout = new Recording();
+        wheel.schedule(timeout, START + 20);
+        wheel.schedule(timeout, START + 60);
+        assertEquals(1, wheel.size());
+        wheel.advance(START + 30);
+        assertTrue(fired.isEmpty());
+        wheel.advance(START + 60);
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void recurringTimeoutReschedulesItselfFromItsCallback() {
+        HashedTimingWheel.Timeout recurring = new HashedTimingWheel.Timeout() {
+            @Override
+            protected void expire(long nowMillis) {
+                fired.add(nowMillis);
+                wheel.schedule(this, nowMillis + 30);
+            }
+        };
+        wheel.schedule(recurring, START + 30);
+        for (long now = START; now <= START + 300; now += TICK) {
+            wheel.advance(now);
+        }
+        assertEquals(10, fired.size());
+        for (int i = 0; i < fired.size(); i++) {
+            assertEquals(START + 30 * (i + 1), (long) fired.get(i));
+        }
+        assertTrue(recurring.isScheduled());
+    }
+
+    @Test
+    public void millisToNextTickBoundsTheSelectTimeout() {
+        wheel.advance(START + 3);
+        wheel.schedule(new Recording(), START + 100);
+        assertEquals(7, wheel.millisToNextTick(START + 3));
+    }
+
+    private final class CancellingTimeout extends HashedTimingWheel.Timeout {
+        private HashedTimingWheel.Timeout other;
+
+        @Override
+        protected void expire(long nowMillis) {
+            fired.add(nowMillis);
+            wheel.cancel(other);
+        }
+    }
+
+    private final class Recording extends HashedTimingWheel.Timeout {
+        @Override
+        protected void expire(long nowMillis) {
+            fired.add(nowMillis);
+        }
+    }
+}
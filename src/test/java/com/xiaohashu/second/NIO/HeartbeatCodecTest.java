@@ -0,0 +1,83 @@
+package com.xiaohashu.second.NIO;
+
+import com.esotericsoftware.kryo.io.Input;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class HeartbeatCodecTest {
+    private static final int HEADER_LENGTH = 8;
+
+    @Test
+    public void templateFramesDecodeWithTheStandardSerializer() {
+        long[] ids = {0, 1, 127, 128, 1L << 35, Long.MAX_VALUE, -1L};
+        for (long id : ids) {
+            long sendTime = id ^ 0x5A5A5A5A5A5AL;
+            assertFrame(request(id, sendTime), id, sendTime, HeartbeatCodec.HEARTBEAT_TYPE, "心跳请求");
+            assertFrame(response(id, sendTime), id, sendTime, HeartbeatCodec.HEARTBEAT_TYPE, "心跳响应");
+            assertFrame(busy(id, sendTime), id, sendTime, HeartbeatCodec.BUSY_TYPE, "服务繁忙");
+        }
+    }
+
+    @Test
+    public void idAndSendTimeAreReadBackInPlace() {
+        long id = 0x0123456789ABCDEFL;
+        ByteBuffer frame = request(id, 42L);
+        assertEquals(id, HeartbeatCodec.readMessageId(frame, HEADER_LENGTH));
+        assertEquals(42L, HeartbeatCodec.readSendTime(frame, HEADER_LENGTH));
+    }
+
+    @Test
+    public void responseEchoesTheRequestId() {
+        ByteBuffer request = request(987654321L, 1L);
+        long id = HeartbeatCodec.readMessageId(request, HEADER_LENGTH);
+        ByteBuffer response = response(id, 2L);
+        assertEquals(987654321L, HeartbeatCodec.readMessageId(response, HEADER_LENGTH));
+        assertEquals(2L, HeartbeatCodec.readSendTime(response, HEADER_LENGTH));
+    }
+
+    @Test
+    public void encodingAtAnOffsetAdvancesPositionByOneFrame() {
+        ByteBuffer target = ByteBuffer.allocate(3 + HeartbeatCodec.frameLength() * 2);
+        target.position(3);
+        HeartbeatCodec.encodeRequest(target, 7, 8);
+        HeartbeatCodec.encodeResponse(target, 9, 10);
+        assertEquals(3 + HeartbeatCodec.frameLength() * 2, target.position());
+        assertEquals(7, HeartbeatCodec.readMessageId(target, 3 + HEADER_LENGTH));
+        assertEquals(9, HeartbeatCodec.readMessageId(target, 3 + HeartbeatCodec.frameLength() + HEADER_LENGTH));
+    }
+
+    private static ByteBuffer request(long id, long sendTime) {
+        ByteBuffer frame = ByteBuffer.allocate(HeartbeatCodec.frameLength());
+        HeartbeatCodec.encodeRequest(frame, id, sendTime);
+        return frame;
+    }
+
+    private static ByteBuffer response(long id, long sendTime) {
+        ByteBuffer frame = ByteBuffer.allocate(HeartbeatCodec.frameLength());
+        HeartbeatCodec.encodeResponse(frame, id, sendTime);
+        return frame;
+    }
+
+    private static ByteBuffer busy(long id, long sendTime) {
+        ByteBuffer frame = ByteBuffer.allocate(HeartbeatCodec.busyFrameLength());
+        HeartbeatCodec.encodeBusy(frame, id, sendTime);
+        return frame;
+    }
+
+    private static void assertFrame(ByteBuffer frame, long id, long sendTime, int type, String content) {
+        assertEquals(frame.capacity(), frame.position());
+        assertEquals(frame.capacity(), frame.getInt(0));
+        assertEquals(type, frame.getInt(4));
+        // 定长9字节的varlong由标准Kryo反序列化器读出
+        Input input = new Input(frame.array(), HEADER_LENGTH, frame.capacity() - HEADER_LENGTH);
+        BusinessMessage message = new BusinessMessageSerializer().read(null, input, BusinessMessage.class);
+        assertEquals(id, message.getMessageId());
+        assertEquals(type, message.getMessageType());
+        assertEquals(sendTime, message.getSendTime());
+        assertEquals(content, message.getContent());
+        assertEquals(frame.capacity(), input.position());
+    }
+}
@@ -0,0 +1,161 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KryoProtocolDecoderTest {
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+
+    @Test
+    public void framesSplitAtEveryByteBoundaryDecodeTheSame() {
+        List<BusinessMessage> expected = new ArrayList<>();
+        ByteBuffer wire = ByteBuffer.allocate(64 * 1024);
+
+        BusinessMessage plain = new BusinessMessage(1, "普通消息", 100, 2);
+        append(wire, encoder.encode(plain));
+        expected.add(plain);
+
+        List<BusinessMessage> batch = Arrays.asList(
+                new BusinessMessage(2, "a", 101, 2), new BusinessMessage(3, null, 102, 5),
+                new BusinessMessage(4, "批量第三条", 103, 6));
+        append(wire, encoder.encodeBatch(batch));
+        expected.addAll(batch);
+
+        BusinessMessage large = new BusinessMessage(5, repeat("可压缩的内容", 200), 104, 7);
+        PooledByteBuffer compressed = new FrameCompressor(64, null).compress(encoder.encode(large));
+        assertTrue((compressed.buffer().getInt(4) & KryoProtocolDecoder.FLAG_COMPRESSED) != 0);
+        append(wire, compressed);
+        expected.add(large);
+
+        // 客户端不接收流分块帧：整帧跳过，不影响后续帧
+        append(wire, encoder.encodeStreamStart(new BusinessMessage(6, "流", 105, 2)));
+        append(wire, encoder.encodeStreamControl(2, 6, StreamChunk.END));
+
+        List<BusinessMessage> compressedBatch = Arrays.asList(
+                new BusinessMessage(7, repeat("x", 300), 106, 2), new BusinessMessage(8, repeat("y", 300), 107, 2));
+        append(wire, new FrameCompressor(64, null).compress(encoder.encodeBatch(compressedBatch)));
+        expected.addAll(compressedBatch);
+
+        BusinessMessage heartbeat = new BusinessMessage(9, "心跳请求", 108, HeartbeatCodec.HEARTBEAT_TYPE);
+        append(wire, encoder.encode(heartbeat)); // 没有心跳监听器时按普通消息解码
+        expected.add(heartbeat);
+
+        wire.flip();
+        byte[] bytes = new byte[wire.remaining()];
+        wire.get(bytes);
+
+        for (int split = 0; split <= bytes.length; split++) {
+            KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+            ByteBuffer receive = ByteBuffer.allocate(bytes.length);
+            receive.put(bytes, 0, split);
+            List<BusinessMessage> decoded = new ArrayList<>(decoder.decode(receive));
+            receive.put(bytes, split, bytes.length - split);
+            decoded.addAll(decoder.decode(receive));
+            assertEquals("切分位置 " + split, expected, decoded);
+            assertEquals("切分位置 " + split, 0, receive.position());
+        }
+    }
+
+    @Test
+    public void byteAtATimeDeliveryDecodesEveryFrame() {
+        ByteBuffer wire = ByteBuffer.allocate(4096);
+        List<BusinessMessage> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            BusinessMessage message = new BusinessMessage(i, "逐字节" + i, i, 2);
+            append(wire, encoder.encode(message));
+            expected.add(message);
+        }
+        wire.flip();
+        KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+        ByteBuffer receive = ByteBuffer.allocate(4096);
+        List<BusinessMessage> decoded = new ArrayList<>();
+        while (wire.hasRemaining()) {
+            receive.put(wire.get());
+            decoded.addAll(decoder.decode(receive));
+        }
+        assertEquals(expected, decoded);
+    }
+
+    @Test
+    public void fileHeaderStopsDecodingAndLeavesFileBytesInTheBuffer() {
+        ByteBuffer receive = ByteBuffer.allocate(1024);
+        append(receive, encoder.encodeFileHeader(new BusinessMessage(11, "report.bin", 200, 3), 5));
+        receive.put(new byte[]{1, 2, 3, 4, 5});
+        List<BusinessMessage> decoded = new KryoProtocolDecoder().decode(receive);
+
+        assertEquals(1, decoded.size());
+        FileTransferHeader header = (FileTransferHeader) decoded.get(0);
+        assertEquals(11, header.getMessageId());
+        assertEquals("report.bin", header.getContent());
+        assertEquals(3, header.getMessageType());
+        assertEquals(5, header.getFileLength());
+        assertEquals("文件字节留给调用方", 5, receive.position());
+        assertEquals(1, receive.get(0));
+    }
+
+    @Test
+    public void corruptedFrameIsSkippedWithoutLosingItsNeighbours() {
+        ByteBuffer receive = ByteBuffer.allocate(4096);
+        append(receive, encoder.encode(new BusinessMessage(1, "前", 0, 2)));
+        PooledByteBuffer broken = new FrameCompressor(64, null).compress(encoder.encode(
+                new BusinessMessage(2, repeat("损坏", 200), 0, 2)));
+        ByteBuffer brokenBuffer = broken.buffer();
+        for (int i = 12; i < brokenBuffer.limit(); i++) {
+            brokenBuffer.put(i, (byte) 0xFF); // 保留帧头和原始长度，破坏LZ4块
+        }
+        append(receive, broken);
+        append(receive, encoder.encode(new BusinessMessage(3, "后", 0, 2)));
+
+        List<BusinessMessage> decoded = new KryoProtocolDecoder().decode(receive);
+        assertEquals(2, decoded.size());
+        assertEquals(1, decoded.get(0).getMessageId());
+        assertEquals(3, decoded.get(1).getMessageId());
+    }
+
+    @Test
+    public void invalidLengthIsSkipped() {
+        ByteBuffer receive = ByteBuffer.allocate(1024);
+        receive.putInt(-5).putInt(2);
+        append(receive, encoder.encode(new BusinessMessage(4, "有效", 0, 2)));
+        List<BusinessMessage> decoded = new KryoProtocolDecoder().decode(receive);
+        assertEquals(1, decoded.size());
+        assertEquals(4, decoded.get(0).getMessageId());
+    }
+
+    @Test
+    public void heartbeatListenerReceivesIdWithoutDeserializing() {
+        long[] seen = new long[2];
+        KryoProtocolDecoder decoder = new KryoProtocolDecoder((id, sendTime) -> {
+            seen[0] = id;
+            seen[1] = sendTime;
+            return true;
+        });
+        ByteBuffer receive = ByteBuffer.allocate(256);
+        HeartbeatCodec.encodeResponse(receive, 77, 88);
+        assertTrue(decoder.decode(receive).isEmpty());
+        assertEquals(77, seen[0]);
+        assertEquals(88, seen[1]);
+        assertNotEquals(0, HeartbeatCodec.frameLength());
+    }
+
+    private static void append(ByteBuffer target, PooledByteBuffer frame) {
+        target.put(frame.buffer());
+        frame.release();
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KryoProtocolEncoderTest {
+    private static final int MAX = KryoProtocolDecoder.MAX_MESSAGE_LENGTH;
+
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+
+    @Test
+    public void largestFrameThatFitsIsEncodedAndDecoded() {
+        BusinessMessage message = new BusinessMessage(1, ascii(MAX - 64), 0, 2);
+        PooledByteBuffer frame = encoder.encode(message);
+        int length = frame.buffer().remaining();
+        assertTrue(length <= MAX);
+        assertEquals(length, frame.buffer().getInt(0));
+
+        ByteBuffer receive = ByteBuffer.allocate(length);
+        receive.put(frame.buffer());
+        frame.release();
+        List<BusinessMessage> decoded = new KryoProtocolDecoder().decode(receive);
+        assertEquals(Arrays.asList(message), decoded);
+    }
+
+    @Test
+    public void framesAboveTheDecoderLimitAreRejected() {
+        BusinessMessage huge = new BusinessMessage(2, ascii(MAX), 0, 2);
+        assertRejected(() -> encoder.encode(huge));
+        assertRejected(() -> encoder.encodeFileHeader(huge, 10));
+        assertRejected(() -> encoder.encodeStreamStart(huge));
+        BusinessMessage half = new BusinessMessage(3, ascii(MAX / 2 + 16), 0, 2);
+        assertRejected(() -> encoder.encodeBatch(Arrays.asList(half, half)));
+    }
+
+    @Test
+    public void batcherDropsMessagesThatCannotBeEncoded() {
+        MessageBatcher batcher = new MessageBatcher(encoder, 16, 64 * 1024);
+        batcher.add(new BusinessMessage(4, ascii(MAX), 0, 2));
+        assertRejected(batcher::drain);
+        assertTrue(batcher.isEmpty());
+
+        batcher.add(new BusinessMessage(5, "正常", 0, 2));
+        PooledByteBuffer frame = batcher.drain();
+        assertTrue(frame.buffer().hasRemaining());
+        frame.release();
+    }
+
+    private static void assertRejected(Encoding encoding) {
+        try {
+            encoding.encode().release();
+            fail("超过最大帧长的帧应被拒绝");
+        } catch (IllegalArgumentException expected) {
+            // 预期
+        }
+    }
+
+    private interface Encoding {
+        PooledByteBuffer encode();
+    }
+
+    private static String ascii(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,149 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MpscQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int PER_PRODUCER = 50_000;
+
+    @Test
+    public void singleThreadIsFifo() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        assertEquals(5, queue.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullIsRejected() {
+        new MpscQueue<Object>().offer(null);
+    }
+
+    @Test
+    public void everyElementFromConcurrentProducersIsPolledExactlyOnce() throws Exception {
+        MpscQueue<Long> queue = new MpscQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = startProducers(queue, start);
+        start.countDown();
+
+        int total = PRODUCERS * PER_PRODUCER;
+        boolean[] seen = new boolean[total];
+        int[] lastSeq = new int[PRODUCERS];
+        Arrays.fill(lastSeq, -1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        int polled = 0;
+        while (polled < total) {
+            Long value = queue.poll();
+            if (value == null) {
+                if (System.nanoTime() > deadline) {
+                    fail("只取到 " + polled + " / " + total);
+                }
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) (value >>> 32);
+            int seq = (int) (long) value;
+            int index = producer * PER_PRODUCER + seq;
+            assertFalse("重复出队: " + producer + "/" + seq, seen[index]);
+            seen[index] = true;
+            // 同一生产者的元素保持入队顺序
+            assertTrue(seq > lastSeq[producer]);
+            lastSeq[producer] = seq;
+            polled++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void sizeAndIsEmptyStayConsistentWithConcurrentOffers() throws Exception {
+        MpscQueue<Long> queue = new MpscQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = startProducers(queue, start);
+        start.countDown();
+
+        // 只有生产者时，队列只增不减：遍历计数单调不减且不超过已入队总数，一旦非空不会再变空
+        int total = PRODUCERS * PER_PRODUCER;
+        int lastSize = 0;
+        boolean becameNonEmpty = false;
+        while (lastSize < total) {
+            boolean empty = queue.isEmpty();
+            int size = queue.size();
+            assertTrue("size回退: " + size + " < " + lastSize, size >= lastSize);
+            assertTrue(size <= total);
+            if (becameNonEmpty) {
+                assertFalse(empty);
+            }
+            becameNonEmpty |= !empty;
+            lastSize = size;
+            if (!producersAlive(producers) && size < total) {
+                assertEquals(total, queue.size()); // 所有生产者结束后链接必然完整
+                break;
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(total, queue.size());
+        assertFalse(queue.isEmpty());
+        for (int i = 0; i < total; i++) {
+            queue.poll();
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    private static List<Thread> startProducers(MpscQueue<Long> queue, CountDownLatch start) {
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            long id = p;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < PER_PRODUCER; i++) {
+                    queue.offer(id << 32 | i);
+                }
+            }, "producer-" + p);
+            producer.start();
+            producers.add(producer);
+        }
+        return producers;
+    }
+
+    private static boolean producersAlive(List<Thread> producers) {
+        for (Thread producer : producers) {
+            if (producer.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
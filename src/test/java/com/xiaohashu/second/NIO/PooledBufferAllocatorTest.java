@@ -0,0 +1,113 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledBufferAllocatorTest {
+    private final PooledBufferAllocator allocator = PooledBufferAllocator.getInstance();
+
+    @Test
+    public void sizeClassesArePowersOfTwoFrom256BytesTo2MB() {
+        assertEquals(0, PooledBufferAllocator.sizeClassIndex(0));
+        assertEquals(0, PooledBufferAllocator.sizeClassIndex(1));
+        assertEquals(0, PooledBufferAllocator.sizeClassIndex(256));
+        assertEquals(1, PooledBufferAllocator.sizeClassIndex(257));
+        assertEquals(1, PooledBufferAllocator.sizeClassIndex(512));
+        assertEquals(5, PooledBufferAllocator.sizeClassIndex(8192));
+        assertEquals(13, PooledBufferAllocator.sizeClassIndex(2 * 1024 * 1024));
+        assertEquals(-1, PooledBufferAllocator.sizeClassIndex(2 * 1024 * 1024 + 1));
+    }
+
+    @Test
+    public void allocationIsRoundedUpToItsSizeClass() {
+        PooledByteBuffer buf = allocator.allocate(1000);
+        assertEquals(1024, buf.capacity());
+        assertEquals(0, buf.buffer().position());
+        assertEquals(1024, buf.buffer().limit());
+        assertEquals(1, buf.refCnt());
+        buf.release();
+
+        PooledByteBuffer unpooled = allocator.allocate(3 * 1024 * 1024);
+        assertEquals(3 * 1024 * 1024, unpooled.capacity());
+        assertEquals(-1, unpooled.sizeClass());
+        unpooled.release();
+    }
+
+    @Test
+    public void releasedBufferIsReusedOnlyAfterRefCountReachesZero() {
+        PooledByteBuffer buf = allocator.allocate(4096);
+        buf.retain();
+        assertFalse(buf.release());
+        assertEquals(1, buf.refCnt());
+        assertTrue(buf.release());
+        assertEquals(0, buf.refCnt());
+
+        PooledByteBuffer again = allocator.allocate(4096);
+        assertSame(buf, again); // 同线程的线程本地缓存后进先出
+        assertEquals(1, again.refCnt());
+        again.release();
+    }
+
+    @Test
+    public void doubleReleaseIsRejected() {
+        PooledByteBuffer buf = allocator.allocate(256);
+        buf.release();
+        try {
+            buf.release();
+            fail("重复释放应抛出异常");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+        try {
+            buf.retain();
+            fail("释放后retain应抛出异常");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void duplicateHoldsOneReferenceOnTheOriginal() {
+        PooledByteBuffer buf = allocator.allocate(512);
+        PooledByteBuffer view = buf.duplicate();
+        assertEquals(2, buf.refCnt());
+        assertTrue(view.buffer().isReadOnly());
+        assertFalse(buf.release());
+        assertTrue(view.release());
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void buffersReleasedOnAnotherThreadAreReturnedToTheSharedPool() throws Exception {
+        // 1MB规格的线程本地缓存只有1个槽位，另一个线程释放的多余缓冲区进入共享池
+        int capacity = 1024 * 1024;
+        List<PooledByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            buffers.add(allocator.allocate(capacity));
+        }
+        Thread releaser = new Thread(() -> {
+            for (PooledByteBuffer buf : buffers) {
+                buf.release();
+            }
+        });
+        releaser.start();
+        releaser.join();
+
+        long directBefore = allocator.getDirectAllocations();
+        PooledByteBuffer first = allocator.allocate(capacity);
+        PooledByteBuffer second = allocator.allocate(capacity);
+        assertEquals("应从共享池取回而不是重新分配直接内存", directBefore, allocator.getDirectAllocations());
+        assertTrue(buffers.contains(first));
+        assertTrue(buffers.contains(second));
+        first.release();
+        second.release();
+    }
+}
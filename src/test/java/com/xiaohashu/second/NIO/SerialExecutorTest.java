@@ -0,0 +1,61 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void tasksRunInSubmissionOrder() {
+        List<Runnable> pending = new ArrayList<>();
+        SerialExecutor executor = new SerialExecutor(pending::add);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int n = i;
+            executor.execute(() -> order.add(n));
+        }
+        assertEquals("同一时刻只调度一次", 1, pending.size());
+        pending.remove(0).run();
+        assertEquals(Arrays.asList(0, 1, 2), order);
+    }
+
+    @Test
+    public void rejectedScheduleDoesNotWedgeTheExecutor() {
+        RejectOnce delegate = new RejectOnce();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        List<String> ran = new ArrayList<>();
+
+        try {
+            executor.execute(() -> ran.add("rejected"));
+            fail("线程池拒绝时应抛出RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            // 预期
+        }
+        executor.execute(() -> ran.add("accepted"));
+        assertEquals("被拒绝的任务不执行，之后的任务照常调度", Arrays.asList("accepted"), ran);
+    }
+
+    /**
+     * 第一次提交时拒绝，之后在调用线程直接执行
+     */
+    private static final class RejectOnce implements Executor {
+        private boolean rejected;
+
+        @Override
+        public void execute(Runnable command) {
+            if (!rejected) {
+                rejected = true;
+                throw new RejectedExecutionException("已关闭");
+            }
+            command.run();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamHandlerTest {
+    private static final int TYPE = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final KryoProtocolEncoder encoder = new KryoProtocolEncoder();
+    private final List<TestClient> clients = new ArrayList<>();
+    private NioSocketServer server;
+
+    @After
+    public void stopServer() throws IOException {
+        for (TestClient client : clients) {
+            client.channel.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void chunksInterleavedWithSmallRequestsAreWrittenInOrder() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        TestClient client = connect(startServer(StreamHandler.toDirectory(directory), 1024 * 1024));
+
+        client.send(encoder.encodeStreamStart(new BusinessMessage(100, "upload.bin", 0, TYPE)));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            byte[] data = chunkData(i, 1000 + i * 317);
+            expected.write(data);
+            client.send(dataChunk(100, data));
+            // 分块之间的小请求照常得到应答，不等流结束
+            client.send(encoder.encode(new BusinessMessage(1000 + i, "小请求" + i, 0, TYPE)));
+            assertEquals("小请求" + i, client.await(1000 + i).getContent());
+        }
+        client.send(encoder.encodeStreamControl(TYPE, 100, StreamChunk.END));
+
+        // 数据全部写出后开始消息才进入业务阶段
+        assertEquals("upload.bin", client.await(100).getContent());
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(directory.resolve("upload.bin")));
+    }
+
+    @Test
+    public void abortedStreamRemovesThePartialFile() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        TestClient client = connect(startServer(StreamHandler.toDirectory(directory), 1024 * 1024));
+
+        client.send(encoder.encodeStreamStart(new BusinessMessage(200, "partial.bin", 0, TYPE)));
+        client.send(dataChunk(200, chunkData(1, 4096)));
+        client.send(encoder.encode(new BusinessMessage(201, "中途", 0, TYPE)));
+        client.await(201);
+        assertTrue(Files.exists(directory.resolve("partial.bin")));
+
+        client.send(encoder.encodeStreamControl(TYPE, 200, StreamChunk.ABORT));
+        client.send(encoder.encode(new BusinessMessage(202, "中止后", 0, TYPE)));
+        client.await(202);
+        waitUntilDeleted(directory.resolve("partial.bin"));
+        assertFalse("中止的流不进入业务阶段", client.received(200));
+    }
+
+    @Test
+    public void fileIsOnlyOpenedOnceDataOrEndArrives() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        byte[] original = chunkData(3, 512);
+        Files.write(directory.resolve("keep.bin"), original);
+        TestClient client = connect(startServer(StreamHandler.toDirectory(directory), 1024 * 1024));
+
+        // 没有数据就中止：已有文件不被截断或删除
+        client.send(encoder.encodeStreamStart(new BusinessMessage(600, "keep.bin", 0, TYPE)));
+        client.send(encoder.encodeStreamControl(TYPE, 600, StreamChunk.ABORT));
+        // 没有数据就结束：生成空文件
+        client.send(encoder.encodeStreamStart(new BusinessMessage(601, "empty.bin", 0, TYPE)));
+        client.send(encoder.encodeStreamControl(TYPE, 601, StreamChunk.END));
+
+        client.await(601);
+        assertArrayEquals(original, Files.readAllBytes(directory.resolve("keep.bin")));
+        assertEquals(0, Files.size(directory.resolve("empty.bin")));
+    }
+
+    @Test
+    public void closingTheConnectionAbortsOpenStreams() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        TestClient client = connect(startServer(StreamHandler.toDirectory(directory), 1024 * 1024));
+
+        client.send(encoder.encodeStreamStart(new BusinessMessage(300, "closed.bin", 0, TYPE)));
+        client.send(dataChunk(300, chunkData(2, 2048)));
+        client.send(encoder.encode(new BusinessMessage(301, "关闭前", 0, TYPE)));
+        client.await(301);
+        client.channel.close();
+        waitUntilDeleted(directory.resolve("closed.bin"));
+    }
+
+    @Test
+    public void slowSinkDoesNotBlockTheEventLoop() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        StreamHandler slow = (connection, header) -> new StreamHandler.StreamSink() {
+            @Override
+            public void onData(ByteBuffer data) {
+                awaitQuietly(release); // 模拟卡住的磁盘
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                synchronized (written) {
+                    written.write(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public void onEnd() {
+            }
+
+            @Override
+            public void onAbort() {
+            }
+        };
+        int port = startServer(slow, 16 * 1024);
+        TestClient uploader = connect(port);
+        TestClient other = connect(port);
+
+        uploader.send(encoder.encodeStreamStart(new BusinessMessage(400, "slow", 0, TYPE)));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 8; i++) {
+            byte[] data = chunkData(i, 8192);
+            expected.write(data);
+            uploader.send(dataChunk(400, data));
+        }
+        uploader.send(encoder.encodeStreamControl(TYPE, 400, StreamChunk.END));
+
+        // 写出线程卡住时事件循环仍在处理其它连接
+        other.send(encoder.encode(new BusinessMessage(401, "另一个连接", 0, TYPE)));
+        assertEquals("另一个连接", other.await(401).getContent());
+        assertFalse(uploader.received(400));
+
+        release.countDown();
+        assertEquals("slow", uploader.await(400).getContent());
+        synchronized (written) {
+            assertArrayEquals(expected.toByteArray(), written.toByteArray());
+        }
+    }
+
+    @Test
+    public void rateLimitedDataChunkAbortsTheStream() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        NioServerConfig config = config(StreamHandler.toDirectory(directory), 1024 * 1024);
+        config.setConnectionRateLimit(2);
+        config.setConnectionBurst(2);
+        TestClient client = connect(startServer(config));
+
+        // 开始分块和第一个数据分块用掉两个令牌，第二个数据分块被拒绝
+        client.send(encoder.encodeStreamStart(new BusinessMessage(500, "limited.bin", 0, TYPE)));
+        client.send(dataChunk(500, chunkData(1, 1024)));
+        client.send(dataChunk(500, chunkData(2, 1024)));
+        client.send(encoder.encodeStreamControl(TYPE, 500, StreamChunk.END));
+        client.send(encoder.encode(new BusinessMessage(501, "限流后", 0, TYPE)));
+
+        assertEquals(HeartbeatCodec.BUSY_TYPE, client.await(500).getMessageType());
+        client.await(501);
+        waitUntilDeleted(directory.resolve("limited.bin"));
+        int replies = 0;
+        for (BusinessMessage message : client.messages) {
+            if (message.getMessageId() == 500) {
+                replies++;
+            }
+        }
+        assertEquals("被拒绝的流不进入业务阶段", 1, replies);
+    }
+
+    private int startServer(StreamHandler streamHandler, int maxStreamPendingBytes) throws Exception {
+        return startServer(config(streamHandler, maxStreamPendingBytes));
+    }
+
+    private static NioServerConfig config(StreamHandler streamHandler, int maxStreamPendingBytes) {
+        NioServerConfig config = new NioServerConfig();
+        config.setPort(0);
+        config.setWorkerThreads(1);
+        config.setJmxEnabled(false);
+        config.setBusinessHandler(new EchoBusinessHandler());
+        config.setStreamHandler(streamHandler);
+        config.setMaxStreamPendingBytes(maxStreamPendingBytes);
+        return config;
+    }
+
+    private int startServer(NioServerConfig config) throws Exception {
+        server = new NioSocketServer(config);
+        Thread boss = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("测试服务端启动失败: " + e.getMessage());
+            }
+        }, "stream-test-server");
+        boss.setDaemon(true);
+        boss.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getLocalPort() < 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("服务端没有启动");
+            }
+            Thread.sleep(10);
+        }
+        return server.getLocalPort();
+    }
+
+    private TestClient connect(int port) throws IOException {
+        TestClient client = new TestClient(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+        clients.add(client);
+        return client;
+    }
+
+    private static ByteBuffer dataChunk(long streamId, byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(KryoProtocolDecoder.STREAM_HEADER_LENGTH + data.length);
+        frame.position(KryoProtocolDecoder.STREAM_HEADER_LENGTH);
+        frame.put(data);
+        KryoProtocolEncoder.finishStreamChunk(frame, 0, TYPE, streamId, StreamChunk.DATA);
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] chunkData(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+        return data;
+    }
+
+    private static void waitUntilDeleted(Path path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.exists(path)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("未完成的流文件没有被删除: " + path);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 阻塞套接字的测试客户端：写出原始帧，按消息ID等待回显
+     */
+    private static final class TestClient {
+        final SocketChannel channel;
+        final KryoProtocolDecoder decoder = new KryoProtocolDecoder();
+        final ByteBuffer receive = ByteBuffer.allocate(256 * 1024);
+        final List<BusinessMessage> messages = new ArrayList<>();
+
+        TestClient(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+        }
+
+        void send(PooledByteBuffer frame) throws IOException {
+            try {
+                send(frame.buffer());
+            } finally {
+                frame.release();
+            }
+        }
+
+        void send(ByteBuffer frame) throws IOException {
+            while (frame.hasRemaining()) {
+                if (channel.write(frame) == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        BusinessMessage await(long messageId) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            for (;;) {
+                for (BusinessMessage message : messages) {
+                    if (message.getMessageId() == messageId) {
+                        return message;
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    fail("没有收到消息 " + messageId);
+                }
+                if (channel.read(receive) < 0) {
+                    fail("连接被服务端关闭");
+                }
+                messages.addAll(decoder.decode(receive));
+                Thread.sleep(1);
+            }
+        }
+
+        boolean received(long messageId) throws IOException {
+            channel.read(receive);
+            messages.addAll(decoder.decode(receive));
+            for (BusinessMessage message : messages) {
+                if (message.getMessageId() == messageId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
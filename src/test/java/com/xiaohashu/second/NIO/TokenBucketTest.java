@@ -0,0 +1,66 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void startsFullAndAllowsABurst() {
+        TokenBucket bucket = new TokenBucket(10, 5, 1000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(1000));
+        }
+        assertFalse(bucket.tryAcquire(1000));
+    }
+
+    @Test
+    public void refillsAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0); // 每100ms一个令牌
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(50));
+        assertEquals(50, bucket.millisUntilAvailable(50));
+        assertTrue(bucket.tryAcquire(100));
+        assertFalse(bucket.tryAcquire(100));
+        assertEquals(100, bucket.millisUntilAvailable(100));
+    }
+
+    @Test
+    public void refillNeverExceedsTheBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(0));
+        }
+        // 空闲很久也只积攒burst个令牌
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(60_000));
+        }
+        assertFalse(bucket.tryAcquire(60_000));
+        assertEquals(1, bucket.millisUntilAvailable(60_000));
+    }
+
+    @Test
+    public void clockGoingBackwardsDoesNotAddTokens() {
+        TokenBucket bucket = new TokenBucket(10, 1, 1000);
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(900));
+        assertFalse(bucket.tryAcquire(1000));
+        assertTrue(bucket.tryAcquire(1100));
+    }
+
+    @Test
+    public void burstIsAtLeastOneToken() {
+        TokenBucket bucket = new TokenBucket(10, 0, 0);
+        assertEquals(0, bucket.millisUntilAvailable(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveRateIsRejected() {
+        new TokenBucket(0, 1, 0);
+    }
+}
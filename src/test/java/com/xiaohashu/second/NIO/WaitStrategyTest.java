@@ -0,0 +1,69 @@
+package com.xiaohashu.second.NIO;
+
+import org.junit.Test;
+
+import java.nio.channels.Selector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaitStrategyTest {
+
+    @Test
+    public void adaptiveWakeupDuringBackoffPreventsTheNextPark() throws Exception {
+        WaitStrategy.Adaptive strategy = new WaitStrategy.Adaptive(2, 2);
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < 4; i++) {
+                strategy.select(selector, 5000, () -> false); // 忙轮询 + 让出阶段，不阻塞
+            }
+            // 循环还没阻塞时收到唤醒：不能被丢弃，否则下面会阻塞满5秒
+            strategy.wakeup(selector);
+            long start = System.nanoTime();
+            assertEquals(0, strategy.select(selector, 5000, () -> false));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+            // 请求只消费一次：之后的空闲阻塞照常等到超时
+            start = System.nanoTime();
+            strategy.select(selector, 50, () -> false);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+        }
+    }
+
+    @Test
+    public void tasksSubmittedDuringAdaptiveBackoffRunPromptly() throws Exception {
+        NioServerConfig config = new NioServerConfig();
+        config.setJmxEnabled(false);
+        BusinessExecutor businessExecutor = new BusinessExecutor(BusinessExecutorType.INLINE, 0, config.getBusinessHandler());
+        // 退避阶段很短：大部分提交落在忙轮询/让出阶段或刚进入阻塞的瞬间
+        NioEventLoop loop = new NioEventLoop("adaptive-test", null, config, businessExecutor,
+                new WaitStrategy.Adaptive(20, 5));
+        loop.start();
+        try {
+            int producers = 3;
+            for (int round = 0; round < 300; round++) {
+                CountDownLatch done = new CountDownLatch(producers);
+                CountDownLatch go = new CountDownLatch(1);
+                for (int p = 0; p < producers; p++) {
+                    new Thread(() -> {
+                        try {
+                            go.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        loop.execute(done::countDown);
+                    }).start();
+                }
+                if (round % 10 == 0) {
+                    Thread.sleep(2); // 让循环退到阻塞阶段
+                }
+                go.countDown();
+                // 时间轮为空时阻塞超时为1秒，丢失唤醒会等满超时
+                assertTrue("第 " + round + " 轮任务没有及时执行", done.await(500, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            loop.shutdown();
+        }
+    }
+}